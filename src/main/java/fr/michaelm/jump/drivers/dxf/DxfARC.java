@@ -0,0 +1,114 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.RandomAccessFile;
+import java.io.IOException;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * ARC and CIRCLE DXF entities.
+ * This class has a static method reading a DXF ARC or CIRCLE and adding the
+ * new feature to a FeatureCollection. An ARC is read as a LineString and a
+ * CIRCLE as a Polygon, tessellated by the DxfArcTessellator of the file.
+ * @author Michaël Michaud
+ */
+public class DxfARC extends DxfENTITY {
+
+    public DxfARC() {super("DEFAULT");}
+
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, FeatureCollection entities)
+                                                            throws IOException {
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
+        feature.setAttribute("LTYPE", "BYLAYER");
+        feature.setAttribute("THICKNESS", 0.0);
+        feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
+        double x=Double.NaN, y=Double.NaN, z=Double.NaN, radius=Double.NaN;
+        double start=0.0, end=360.0, extrusion=1.0;
+        boolean isArc = false;
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
+        DxfGroup group;
+        while (null != (group = DxfGroup.readGroup(raf))) {
+            int code = group.getCode();
+            if (code==0) break;
+            if (DxfFile.DEBUG) group.print(12);
+            if (code==8) feature.setAttribute("LAYER", group.getValue());
+            else if (code==6) feature.setAttribute("LTYPE", group.getValue());
+            else if (code==39) feature.setAttribute("THICKNESS", group.getDoubleValue());
+            else if (code==62) feature.setAttribute("COLOR", group.getIntValue());
+            else if (code==10) x = group.getDoubleValue();
+            else if (code==20) y = group.getDoubleValue();
+            else if (code==30) z = group.getDoubleValue();
+            else if (code==40) radius = group.getDoubleValue();
+            else if (code==50) {start = group.getDoubleValue(); isArc = true;}
+            else if (code==51) {end = group.getDoubleValue(); isArc = true;}
+            else if (code==230) extrusion = group.getDoubleValue();
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
+            //else {}
+        }
+        if (!Double.isNaN(x) && !Double.isNaN(y) && radius > 0.0) {
+            GeometryFactory gf = dxfFile.getGeometryFactory();
+            double sweep = 360.0;
+            if (isArc) {
+                sweep = (end - start) % 360.0;
+                if (sweep <= 0.0) sweep += 360.0;
+            }
+            Coordinate[] coords = dxfFile.getArcTessellator().arc(x, y, z, radius,
+                    Math.toRadians(start), sweep == 360.0 ? 2.0 * Math.PI : Math.toRadians(sweep));
+            // entities drawn with an opposite extrusion direction (0,0,-1)
+            // are mirrored
+            if (extrusion < 0.0) mirror(coords);
+            if (isArc) {
+                feature.setGeometry(gf.createLineString(coords));
+            }
+            else {
+                feature.setGeometry(gf.createPolygon(gf.createLinearRing(coords)));
+            }
+            if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
+            entities.add(feature);
+        }
+        return group;
+    }
+
+   /**
+    * Transform coordinates from the object coordinate system of an
+    * extrusion direction (0,0,-1) to world coordinates.
+    */
+    static void mirror(Coordinate[] coords) {
+        for (Coordinate coord : coords) {
+            coord.x = -coord.x;
+            coord.z = -coord.z;
+        }
+    }
+
+}
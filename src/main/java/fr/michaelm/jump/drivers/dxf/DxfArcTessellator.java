@@ -0,0 +1,200 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateList;
+
+/**
+ * Tessellation of circles, arcs and ellipses.
+ * The number of segments is the smallest one keeping the distance between
+ * the curve and its chords under a tolerance, so that it grows with the
+ * radius.
+ * Cosines and sines of the angles of a given number of segments and a
+ * given sweep are computed once and cached as a unit circle template,
+ * which is then rotated, scaled and moved for each curve.
+ * Arcs of polylines (bulges) are computed with a constant rotation applied
+ * from one point to the next one, without any template.
+ * A tessellator is not thread-safe.
+ * @author Michaël Michaud
+ */
+public class DxfArcTessellator {
+
+    /** Default maximum distance between a curve and its chords. */
+    public static final double DEFAULT_TOLERANCE = 0.01;
+
+    // Bounds of the number of segments of a whole circle
+    private static final int MIN_SEGMENTS = 8;
+    private static final int MAX_SEGMENTS = 4096;
+
+    private static final int CACHE_SIZE = 256;
+
+    private final double tolerance;
+
+    // Unit circle templates, as interleaved cosines and sines, by number of
+    // segments and sweep
+    private final Map<Template,double[]> templates =
+        new LinkedHashMap<Template,double[]>(CACHE_SIZE, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Template,double[]> eldest) {
+                return size() > CACHE_SIZE;
+            }
+        };
+
+    public DxfArcTessellator(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+   /**
+    * Return the number of segments needed to tessellate an arc of radius
+    * radius and of sweep radians.
+    */
+    public int getSegments(double radius, double sweep) {
+        double fraction = Math.abs(sweep) / (2.0 * Math.PI);
+        int min = Math.max(1, (int)Math.ceil(MIN_SEGMENTS * fraction));
+        if (!(radius > tolerance)) return min;
+        // angle of a chord whose distance to the arc is tolerance
+        double step = 2.0 * Math.acos(1.0 - tolerance / radius);
+        int segments = (int)Math.min(MAX_SEGMENTS, Math.ceil(2.0 * Math.PI / step));
+        return Math.max(min, (int)Math.ceil(segments * fraction));
+    }
+
+   /**
+    * Tessellate the circular arc of center cx, cy, starting at angle start
+    * and turning counterclockwise by sweep (angles in radians).
+    * If sweep is 2.PI, the last coordinate is equal to the first one.
+    */
+    public Coordinate[] arc(double cx, double cy, double z, double radius,
+                            double start, double sweep) {
+        return ellipse(cx, cy, z, radius, 0.0, 0.0, radius, start, sweep, radius);
+    }
+
+   /**
+    * Tessellate the elliptical arc center + cos(t).u + sin(t).v for t from
+    * start to start + sweep (radians). radius is the largest radius of the
+    * ellipse, used to compute the number of segments.
+    * If sweep is 2.PI, the last coordinate is equal to the first one.
+    */
+    public Coordinate[] ellipse(double cx, double cy, double z,
+                                double ux, double uy, double vx, double vy,
+                                double start, double sweep, double radius) {
+        int segments = getSegments(radius, sweep);
+        double[] template = getTemplate(segments, sweep);
+        double cosStart = Math.cos(start);
+        double sinStart = Math.sin(start);
+        Coordinate[] coords = new Coordinate[segments + 1];
+        for (int i = 0 ; i <= segments ; i++) {
+            double c = template[2 * i];
+            double s = template[2 * i + 1];
+            // cos(start + a) and sin(start + a)
+            double cos = cosStart * c - sinStart * s;
+            double sin = sinStart * c + cosStart * s;
+            coords[i] = new Coordinate(cx + cos * ux + sin * vx, cy + cos * uy + sin * vy, z);
+        }
+        if (Math.abs(sweep) >= 2.0 * Math.PI) {
+            coords[segments] = new Coordinate(coords[0]);
+        }
+        return coords;
+    }
+
+   /**
+    * Add to coordList the points of the arc going from the last coordinate
+    * of coordList to (x, y, z), both ends excluded. bulge is the tangent of
+    * the quarter of the arc angle, positive if the arc is counterclockwise.
+    */
+    public void addBulge(CoordinateList coordList, double x, double y, double z,
+                         double bulge) {
+        if (bulge == 0.0 || Double.isNaN(bulge) || coordList.isEmpty()) return;
+        Coordinate start = coordList.getCoordinate(coordList.size() - 1);
+        double dx = x - start.x;
+        double dy = y - start.y;
+        double chord = Math.hypot(dx, dy);
+        if (chord == 0.0) return;
+        // center is on the normal to the chord at its middle
+        double offset = (1.0 - bulge * bulge) / (4.0 * bulge);
+        double cx = start.x + 0.5 * dx - offset * dy;
+        double cy = start.y + 0.5 * dy + offset * dx;
+        double radius = chord * (1.0 + bulge * bulge) / (4.0 * Math.abs(bulge));
+        double sweep = 4.0 * Math.atan(bulge);
+        int segments = getSegments(radius, sweep);
+        double step = sweep / segments;
+        double cos = Math.cos(step);
+        double sin = Math.sin(step);
+        double vx = start.x - cx;
+        double vy = start.y - cy;
+        double z0 = start.z;
+        for (int i = 1 ; i < segments ; i++) {
+            double t = vx * cos - vy * sin;
+            vy = vx * sin + vy * cos;
+            vx = t;
+            coordList.add(new Coordinate(cx + vx, cy + vy, z0 + (z - z0) * i / segments), true);
+        }
+    }
+
+    // Cosines and sines of i.sweep/segments for i from 0 to segments
+    private double[] getTemplate(int segments, double sweep) {
+        Template key = new Template(segments, sweep);
+        double[] template = templates.get(key);
+        if (template == null) {
+            template = new double[2 * (segments + 1)];
+            for (int i = 0 ; i <= segments ; i++) {
+                double angle = sweep * i / segments;
+                template[2 * i] = Math.cos(angle);
+                template[2 * i + 1] = Math.sin(angle);
+            }
+            templates.put(key, template);
+        }
+        return template;
+    }
+
+    private static final class Template {
+        final int segments;
+        final double sweep;
+
+        Template(int segments, double sweep) {
+            this.segments = segments;
+            this.sweep = sweep;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Template)) return false;
+            Template other = (Template)o;
+            return segments == other.segments &&
+                   Double.doubleToLongBits(sweep) == Double.doubleToLongBits(other.sweep);
+        }
+
+        public int hashCode() {
+            return 31 * segments + Double.hashCode(sweep);
+        }
+    }
+
+}
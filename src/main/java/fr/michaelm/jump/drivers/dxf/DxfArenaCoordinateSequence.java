@@ -0,0 +1,134 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.ObjectStreamException;
+import java.nio.DoubleBuffer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateXYM;
+import org.locationtech.jts.geom.CoordinateXYZM;
+import org.locationtech.jts.geom.Envelope;
+import org.locationtech.jts.geom.impl.PackedCoordinateSequence;
+
+/**
+ * A CoordinateSequence reading its ordinates from a slice of a
+ * {@link DxfCoordinateArena} chunk.
+ * Coordinate objects are only created on demand, and cached with a soft
+ * reference as in other PackedCoordinateSequences.
+ * @author Michaël Michaud
+ */
+public class DxfArenaCoordinateSequence extends PackedCoordinateSequence {
+
+    private static final long serialVersionUID = 1L;
+
+    private final transient DxfCoordinateArena arena;
+    private final transient DoubleBuffer buffer;
+    private final int offset;
+    private final int size;
+
+    DxfArenaCoordinateSequence(DxfCoordinateArena arena, DoubleBuffer buffer,
+                               int offset, int size, int dimension, int measures) {
+        super(dimension, measures);
+        this.arena = arena;
+        this.buffer = buffer;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public double getOrdinate(int index, int ordinateIndex) {
+        if (ordinateIndex >= dimension) return java.lang.Double.NaN;
+        return buffer.get(offset + index * dimension + ordinateIndex);
+    }
+
+    public void setOrdinate(int index, int ordinateIndex, double value) {
+        coordRef = null;
+        buffer.put(offset + index * dimension + ordinateIndex, value);
+    }
+
+    void setCoordinate(int index, Coordinate c) {
+        int i = offset + index * dimension;
+        buffer.put(i, c.x);
+        buffer.put(i+1, c.y);
+        if (dimension > 2) {
+            if (measures == 0) {
+                buffer.put(i+2, c.getZ());
+                if (dimension > 3) buffer.put(i+3, c.getM());
+            }
+            else if (dimension == 3) buffer.put(i+2, c.getM());
+            else {
+                buffer.put(i+2, c.getZ());
+                buffer.put(i+3, c.getM());
+            }
+        }
+    }
+
+    protected Coordinate getCoordinateInternal(int index) {
+        int i = offset + index * dimension;
+        double x = buffer.get(i);
+        double y = buffer.get(i+1);
+        if (dimension == 2) return new Coordinate(x, y);
+        if (dimension == 3 && measures == 0) return new Coordinate(x, y, buffer.get(i+2));
+        if (dimension == 3) return new CoordinateXYM(x, y, buffer.get(i+2));
+        return new CoordinateXYZM(x, y, buffer.get(i+2), buffer.get(i+3));
+    }
+
+    public Envelope expandEnvelope(Envelope env) {
+        for (int i = offset, max = offset + size * dimension ; i < max ; i += dimension) {
+            env.expandToInclude(buffer.get(i), buffer.get(i+1));
+        }
+        return env;
+    }
+
+    @Deprecated
+    public Object clone() {
+        return copy();
+    }
+
+    public DxfArenaCoordinateSequence copy() {
+        DxfArenaCoordinateSequence copy = arena.allocate(size, dimension, measures);
+        for (int i = 0, max = size * dimension ; i < max ; i++) {
+            copy.buffer.put(copy.offset + i, buffer.get(offset + i));
+        }
+        return copy;
+    }
+
+    /**
+     * Direct buffers are not serializable : serialize this sequence as a
+     * standard PackedCoordinateSequence.
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        double[] ordinates = new double[size * dimension];
+        for (int i = 0 ; i < ordinates.length ; i++) {
+            ordinates[i] = buffer.get(offset + i);
+        }
+        return new PackedCoordinateSequence.Double(ordinates, dimension, measures);
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+
+/**
+ * Indices of the attributes used to write DXF entities, resolved once for a
+ * FeatureSchema so that features are read by index instead of by name.
+ * An index is -1 if the schema has no such attribute.
+ * A plan is resolved once for each collection written, and passed down to
+ * the entity writers : it is not cached beyond the export.
+ * Plans are immutable and can be shared between threads.
+ * @author Michaël Michaud
+ */
+public final class DxfAttributePlan {
+
+    private final FeatureSchema schema;
+
+    final int layer;
+    final int ltype;
+    final int elevation;
+    final int thickness;
+    final int color;
+    final int text;
+    final int textHeight;
+    final int textRotation;
+    final int textStyle;
+
+    private DxfAttributePlan(FeatureSchema schema) {
+        this.schema = schema;
+        this.layer = index(schema, "LAYER");
+        this.ltype = index(schema, "LTYPE");
+        this.elevation = index(schema, "ELEVATION");
+        this.thickness = index(schema, "THICKNESS");
+        this.color = index(schema, "COLOR");
+        this.text = index(schema, "TEXT");
+        this.textHeight = index(schema, "TEXT_HEIGHT");
+        this.textRotation = index(schema, "TEXT_ROTATION");
+        this.textStyle = index(schema, "TEXT_STYLE");
+    }
+
+   /**
+    * Resolve the plan of schema.
+    */
+    public static DxfAttributePlan get(FeatureSchema schema) {
+        return new DxfAttributePlan(schema);
+    }
+
+   /**
+    * Return this plan if feature has the schema it was resolved for, or the
+    * plan of the schema of feature (features of a collection share the same
+    * schema, but nothing prevents a collection from mixing schemas).
+    */
+    DxfAttributePlan of(Feature feature) {
+        return feature.getSchema() == schema ? this : get(feature.getSchema());
+    }
+
+    private static int index(FeatureSchema schema, String name) {
+        return schema.hasAttribute(name) ? schema.getAttributeIndex(name) : -1;
+    }
+
+   /**
+    * Return the value of attribute index of feature, or null if the schema
+    * has no such attribute.
+    */
+    static Object value(Feature feature, int index) {
+        return index < 0 ? null : feature.getAttribute(index);
+    }
+
+   /**
+    * Return the value of the LAYER attribute if it is not blank, or
+    * defaultLayer.
+    */
+    Object layer(Feature feature, String defaultLayer) {
+        if (layer >= 0 && !feature.getString(layer).trim().equals("")) {
+            return feature.getAttribute(layer);
+        }
+        return defaultLayer;
+    }
+
+}
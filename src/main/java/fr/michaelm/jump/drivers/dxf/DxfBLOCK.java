@@ -0,0 +1,134 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.util.AffineTransformation;
+
+/**
+ * A block definition read in the BLOCKS section : the entities of the block
+ * and the blocks it inserts.
+ * Entities are resolved once, the first time the block is inserted : nested
+ * blocks are expanded, and geometries are moved so that the base point of
+ * the block is at 0,0. Resolved features are shared by every INSERT and
+ * must not be modified.
+ * @author Michaël Michaud
+ */
+public class DxfBLOCK {
+
+    private final String name;
+    private final Coordinate basePoint;
+    final FeatureCollection entities;
+    final List<DxfINSERT> inserts = new ArrayList<>();
+
+    private List<Feature> resolved = null;
+    private boolean resolving = false;
+    private Geometry geometry = null;
+
+    public DxfBLOCK(String name, Coordinate basePoint) {
+        this(name, basePoint, DxfFile.DXF_SCHEMA);
+    }
+
+   /**
+    * Create a block whose entities are read with schema.
+    */
+    public DxfBLOCK(String name, Coordinate basePoint, FeatureSchema schema) {
+        this.name = name;
+        this.basePoint = basePoint;
+        this.entities = new FeatureDataset(schema);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Coordinate getBasePoint() {
+        return basePoint;
+    }
+
+   /**
+    * Return the features of this block, including the ones of nested blocks,
+    * relative to the base point of the block.
+    * A block inserting itself, directly or not, is only expanded once, and
+    * the recursive insertion is ignored.
+    */
+    public List<Feature> getFeatures(DxfFile dxfFile) {
+        if (resolved != null) return resolved;
+        if (resolving) {
+            if (DxfFile.DEBUG) System.out.println("Recursive insertion of block " + name);
+            return Collections.emptyList();
+        }
+        resolving = true;
+        try {
+            List<Feature> features = new ArrayList<>();
+            AffineTransformation toBase = basePoint.x == 0.0 && basePoint.y == 0.0 ? null :
+                    AffineTransformation.translationInstance(-basePoint.x, -basePoint.y);
+            for (Feature feature : entities.getFeatures()) {
+                if (toBase != null) {
+                    Geometry geometry = toBase.transform(feature.getGeometry());
+                    feature = feature.clone(false);
+                    feature.setGeometry(geometry);
+                }
+                features.add(feature);
+            }
+            for (DxfINSERT insert : inserts) {
+                insert.expand(dxfFile, toBase, features);
+            }
+            resolved = Collections.unmodifiableList(features);
+            return resolved;
+        } finally {
+            resolving = false;
+        }
+    }
+
+   /**
+    * Return the geometries of the features of this block as a single
+    * geometry, shared by all the instances of the block.
+    */
+    public Geometry getGeometry(DxfFile dxfFile) {
+        if (geometry == null) {
+            List<Feature> features = getFeatures(dxfFile);
+            List<Geometry> geometries = new ArrayList<>(features.size());
+            for (Feature feature : features) {
+                geometries.add(feature.getGeometry());
+            }
+            GeometryFactory factory = dxfFile.getGeometryFactory();
+            geometry = factory.buildGeometry(geometries);
+        }
+        return geometry;
+    }
+
+}
@@ -26,50 +26,100 @@ package fr.michaelm.jump.drivers.dxf;
 
 import java.io.RandomAccessFile;
 import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.feature.FeatureDataset;
+import org.locationtech.jts.geom.Coordinate;
 
 
 /**
- * A DXF block contains a block of geometries. The dxf driver can read entities
- * inside a block, but it will not remember that the entities are in a same
- * block.
+ * The BLOCKS section of a DXF file, containing block definitions.
+ * Blocks are not read as features : their entities are kept by block name,
+ * and added to the features each time an INSERT references the block.
  * @author Michaël Michaud
  */
 public class DxfBLOCKS {
 
-    FeatureCollection entities;
+    Map<String,DxfBLOCK> blocks = new HashMap<>();
 
     public DxfBLOCKS() {
-        entities = new FeatureDataset(DxfFile.DXF_SCHEMA);
     }
 
-    public static DxfBLOCKS readBlocks(RandomAccessFile raf) 
+    public DxfBLOCK getBlock(String name) {
+        return blocks.get(name);
+    }
+
+    public static DxfBLOCKS readBlocks(RandomAccessFile raf, DxfFile dxfFile) 
                                      throws NumberFormatException, IOException {
-        return readEntities(raf);
+        return readEntities(raf, dxfFile);
     }
 
-    public static DxfBLOCKS readEntities(RandomAccessFile raf) 
+    public static DxfBLOCKS readEntities(RandomAccessFile raf, DxfFile dxfFile) 
                                      throws NumberFormatException, IOException {
-        DxfBLOCKS dxfEntities = new DxfBLOCKS();
+        DxfBLOCKS dxfBlocks = new DxfBLOCKS();
+        // entities outside BLOCK/ENDBLK (should not happen) are ignored
+        FeatureCollection ignored = new FeatureDataset(dxfFile.getSchema());
+        DxfBLOCK block = null;
         DxfGroup group = new DxfGroup(2, "BLOCKS");
         while (group != null && !group.equals(DxfFile.ENDSEC)) {
              if (group.getCode() == 0) {
                  if (DxfFile.DEBUG) group.print(8);
-                 if (group.getValue().equals("POINT")) {
-                     group = DxfPOINT.readEntity(raf, dxfEntities.entities);
+                 FeatureCollection entities = block == null ? ignored : block.entities;
+                 if (group.getValue().equals("BLOCK")) {
+                     String name = null;
+                     double x = 0.0, y = 0.0;
+                     while (null != (group = DxfGroup.readGroup(raf)) && group.getCode() != 0) {
+                         if (group.getCode() == 2) name = group.getValue();
+                         else if (group.getCode() == 10) x = group.getDoubleValue();
+                         else if (group.getCode() == 20) y = group.getDoubleValue();
+                     }
+                     block = new DxfBLOCK(name, new Coordinate(x, y), dxfFile.getSchema());
+                     if (name != null) dxfBlocks.blocks.put(name, block);
+                 }
+                 else if (group.getValue().equals("ENDBLK")) {
+                     block = null;
+                     group = DxfGroup.readGroup(raf);
+                 }
+                 else if (group.getValue().equals("POINT")) {
+                     group = DxfPOINT.readEntity(raf, dxfFile, entities);
                  }
                  else if (group.getValue().equals("TEXT")) {
-                     group = DxfTEXT.readEntity(raf, dxfEntities.entities);
+                     group = DxfTEXT.readEntity(raf, dxfFile, entities);
                  }
                  else if (group.getValue().equals("LINE")) {
-                     group = DxfLINE.readEntity(raf, dxfEntities.entities);
+                     group = DxfLINE.readEntity(raf, dxfFile, entities);
                  }
                  else if (group.getValue().equals("POLYLINE")) {
-                     group = DxfPOLYLINE.readEntity(raf, dxfEntities.entities);
+                     group = DxfPOLYLINE.readEntity(raf, dxfFile, entities);
                  }
                  else if (group.getValue().equals("LWPOLYLINE")) {
-                     group = DxfLWPOLYLINE.readEntity(raf, dxfEntities.entities);
+                     group = DxfLWPOLYLINE.readEntity(raf, dxfFile, entities);
+                 }
+                 else if (group.getValue().equals("ARC") || group.getValue().equals("CIRCLE")) {
+                     group = DxfARC.readEntity(raf, dxfFile, entities);
+                 }
+                 else if (group.getValue().equals("ELLIPSE")) {
+                     group = DxfELLIPSE.readEntity(raf, dxfFile, entities);
+                 }
+                 else if (group.getValue().equals("SPLINE")) {
+                     group = DxfSPLINE.readEntity(raf, dxfFile, entities);
+                 }
+                 else if (group.getValue().equals("HATCH")) {
+                     group = DxfHATCH.readEntity(raf, dxfFile, entities);
+                 }
+                 else if (group.getValue().equals("MTEXT")) {
+                     group = DxfMTEXT.readEntity(raf, dxfFile, entities);
+                 }
+                 else if (group.getValue().equals("3DFACE") || group.getValue().equals("SOLID") ||
+                          group.getValue().equals("TRACE")) {
+                     group = DxfFACE.readEntity(raf, dxfFile, entities, group.getValue(), null);
+                 }
+                 // nested blocks are expanded when the block is first inserted
+                 else if (group.getValue().equals("INSERT")) {
+                     DxfINSERT insert = new DxfINSERT();
+                     group = insert.read(raf);
+                     if (block != null) block.inserts.add(insert);
                  }
                  else {
                      group = DxfGroup.readGroup(raf);
@@ -79,7 +129,7 @@ public class DxfBLOCKS {
                  group = DxfGroup.readGroup(raf);
              }
         }
-        return dxfEntities;
+        return dxfBlocks;
     }
 
 }
@@ -0,0 +1,127 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateSequence;
+import org.locationtech.jts.geom.CoordinateSequenceFactory;
+import org.locationtech.jts.geom.Coordinates;
+
+/**
+ * A CoordinateSequenceFactory storing ordinates outside the java heap.
+ * Ordinates are appended to direct ByteBuffers (chunks) which are never
+ * compacted nor reused : a chunk is released by the garbage collector when
+ * the last geometry using it is released.
+ * Use it with a GeometryFactory to load very large read-only layers without
+ * increasing the size of the heap to be scanned by the garbage collector.
+ * @author Michaël Michaud
+ */
+public class DxfCoordinateArena implements CoordinateSequenceFactory, Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // First chunk is small so that small files do not reserve much memory,
+    // next chunks grow up to MAX_CHUNK_SIZE doubles (8 MB)
+    private static final int MIN_CHUNK_SIZE = 1 << 14;
+    private static final int MAX_CHUNK_SIZE = 1 << 20;
+
+    private transient DoubleBuffer chunk;
+    private transient int chunkPosition;
+    private transient int nextChunkSize = MIN_CHUNK_SIZE;
+
+    public DxfCoordinateArena() {}
+
+    /**
+     * Reserve size * dimension ordinates in the arena.
+     */
+    synchronized DxfArenaCoordinateSequence allocate(int size, int dimension, int measures) {
+        int length = size * dimension;
+        if (chunk == null || chunkPosition + length > chunk.capacity()) {
+            if (length > nextChunkSize / 2) {
+                // large sequences get their own buffer and do not waste
+                // the end of current chunk
+                return new DxfArenaCoordinateSequence(this,
+                        newBuffer(Math.max(length, 1)), 0, size, dimension, measures);
+            }
+            chunk = newBuffer(nextChunkSize);
+            chunkPosition = 0;
+            nextChunkSize = Math.min(nextChunkSize * 2, MAX_CHUNK_SIZE);
+        }
+        DxfArenaCoordinateSequence seq = new DxfArenaCoordinateSequence(
+                this, chunk, chunkPosition, size, dimension, measures);
+        chunkPosition += length;
+        return seq;
+    }
+
+    private static DoubleBuffer newBuffer(int capacity) {
+        return ByteBuffer.allocateDirect(capacity * 8)
+                .order(ByteOrder.nativeOrder())
+                .asDoubleBuffer();
+    }
+
+    public CoordinateSequence create(Coordinate[] coordinates) {
+        if (coordinates == null) coordinates = new Coordinate[0];
+        // dxf coordinates have a NaN z when no z is read : store it only
+        // if at least one coordinate has a z
+        boolean hasZ = false;
+        int measures = 0;
+        for (Coordinate c : coordinates) {
+            if (!Double.isNaN(c.getZ())) hasZ = true;
+            if (Coordinates.measures(c) > 0) measures = 1;
+        }
+        int dimension = 2 + (hasZ ? 1 : 0) + measures;
+        DxfArenaCoordinateSequence seq = allocate(coordinates.length, dimension, measures);
+        for (int i = 0 ; i < coordinates.length ; i++) {
+            seq.setCoordinate(i, coordinates[i]);
+        }
+        return seq;
+    }
+
+    public CoordinateSequence create(CoordinateSequence coordSeq) {
+        int dimension = Math.max(2, coordSeq.getDimension());
+        int measures = coordSeq.getMeasures();
+        DxfArenaCoordinateSequence seq = allocate(coordSeq.size(), dimension, measures);
+        for (int i = 0 ; i < coordSeq.size() ; i++) {
+            for (int j = 0 ; j < dimension ; j++) {
+                seq.setOrdinate(i, j, coordSeq.getOrdinate(i, j));
+            }
+        }
+        return seq;
+    }
+
+    public CoordinateSequence create(int size, int dimension) {
+        return allocate(size, Math.max(2, dimension), 0);
+    }
+
+    public CoordinateSequence create(int size, int dimension, int measures) {
+        return allocate(size, Math.max(2 + measures, dimension), measures);
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.RandomAccessFile;
+import java.io.IOException;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * ELLIPSE DXF entity.
+ * This class has a static method reading a DXF ELLIPSE and adding the new
+ * feature to a FeatureCollection. A whole ellipse is read as a Polygon and
+ * an elliptical arc as a LineString.
+ * @author Michaël Michaud
+ */
+public class DxfELLIPSE extends DxfENTITY {
+
+    public DxfELLIPSE() {super("DEFAULT");}
+
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, FeatureCollection entities)
+                                                            throws IOException {
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
+        feature.setAttribute("LTYPE", "BYLAYER");
+        feature.setAttribute("THICKNESS", 0.0);
+        feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
+        double x=Double.NaN, y=Double.NaN, z=Double.NaN;
+        // end point of the major axis, relative to the center
+        double mx=Double.NaN, my=Double.NaN;
+        double ratio=1.0, start=0.0, end=2.0*Math.PI, extrusion=1.0;
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
+        DxfGroup group;
+        while (null != (group = DxfGroup.readGroup(raf))) {
+            int code = group.getCode();
+            if (code==0) break;
+            if (DxfFile.DEBUG) group.print(12);
+            if (code==8) feature.setAttribute("LAYER", group.getValue());
+            else if (code==6) feature.setAttribute("LTYPE", group.getValue());
+            else if (code==39) feature.setAttribute("THICKNESS", group.getDoubleValue());
+            else if (code==62) feature.setAttribute("COLOR", group.getIntValue());
+            else if (code==10) x = group.getDoubleValue();
+            else if (code==20) y = group.getDoubleValue();
+            else if (code==30) z = group.getDoubleValue();
+            else if (code==11) mx = group.getDoubleValue();
+            else if (code==21) my = group.getDoubleValue();
+            else if (code==40) ratio = group.getDoubleValue();
+            else if (code==41) start = group.getDoubleValue();
+            else if (code==42) end = group.getDoubleValue();
+            else if (code==230) extrusion = group.getDoubleValue();
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
+            //else {}
+        }
+        double radius = Math.hypot(mx, my);
+        if (!Double.isNaN(x) && !Double.isNaN(y) && radius > 0.0) {
+            GeometryFactory gf = dxfFile.getGeometryFactory();
+            double sweep = (end - start) % (2.0 * Math.PI);
+            if (sweep <= 0.0) sweep += 2.0 * Math.PI;
+            boolean closed = Math.abs(sweep - 2.0 * Math.PI) < 1E-9;
+            if (closed) sweep = 2.0 * Math.PI;
+            // the minor axis is the major axis turned by 90 degrees around
+            // the extrusion direction (the center and the axis are in world
+            // coordinates)
+            double sign = extrusion < 0.0 ? -1.0 : 1.0;
+            Coordinate[] coords = dxfFile.getArcTessellator().ellipse(x, y, z,
+                    mx, my, -sign * ratio * my, sign * ratio * mx,
+                    start, sweep, radius);
+            if (closed) {
+                feature.setGeometry(gf.createPolygon(gf.createLinearRing(coords)));
+            }
+            else {
+                feature.setGeometry(gf.createLineString(coords));
+            }
+            if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
+            entities.add(feature);
+        }
+        return group;
+    }
+
+}
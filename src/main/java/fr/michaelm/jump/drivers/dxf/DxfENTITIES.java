@@ -31,6 +31,7 @@ import java.util.Iterator;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.FeatureCollection;
 import com.vividsolutions.jump.feature.FeatureDataset;
+import com.vividsolutions.jump.feature.FeatureSchema;
 
 /**
  * The ENTITIES section of a DXF file containing all the data.
@@ -41,7 +42,11 @@ public class DxfENTITIES {
     FeatureCollection entities;
 
     public DxfENTITIES() {
-        entities = new FeatureDataset(DxfFile.DXF_SCHEMA);
+        this(DxfFile.DXF_SCHEMA);
+    }
+
+    public DxfENTITIES(FeatureSchema schema) {
+        entities = new FeatureDataset(schema);
     }
     
     public FeatureCollection getEntities() {
@@ -52,35 +57,66 @@ public class DxfENTITIES {
         this.entities = featureCollection;
     }
     
-    public static DxfENTITIES readEntities(RandomAccessFile raf) throws IOException {
-        DxfENTITIES dxfEntities = new DxfENTITIES();
+    public static DxfENTITIES readEntities(RandomAccessFile raf, DxfFile dxfFile) throws IOException {
+        DxfENTITIES dxfEntities = new DxfENTITIES(dxfFile.getSchema());
         DxfGroup group = new DxfGroup(2, "ENTITIES");
+        DxfFaceMerger merger = dxfFile.isMergeFaces() ?
+                new DxfFaceMerger(dxfFile.getGeometryFactory()) : null;
         while (group != null && !group.equals(DxfFile.ENDSEC)) {
             if (group.getCode() == 0) {
                 if (DxfFile.DEBUG) group.print(8);
+                // address and first feature of the entity, to index it
+                long start = group.getAddress();
+                int first = dxfEntities.entities.size();
                 if (group.getValue().equals("POINT")) {
-                    group = DxfPOINT.readEntity(raf, dxfEntities.entities);
+                    group = DxfPOINT.readEntity(raf, dxfFile, dxfEntities.entities);
                 }
                 else if (group.getValue().equals("TEXT")) {
-                    group = DxfTEXT.readEntity(raf, dxfEntities.entities);
+                    group = DxfTEXT.readEntity(raf, dxfFile, dxfEntities.entities);
                 }
                 else if (group.getValue().equals("LINE")) {
-                    group = DxfLINE.readEntity(raf, dxfEntities.entities);
+                    group = DxfLINE.readEntity(raf, dxfFile, dxfEntities.entities);
                 }
                 else if (group.getValue().equals("POLYLINE")) {
-                    group = DxfPOLYLINE.readEntity(raf, dxfEntities.entities);
+                    group = DxfPOLYLINE.readEntity(raf, dxfFile, dxfEntities.entities);
                 }
                 else if (group.getValue().equals("LWPOLYLINE")) {
-                    group = DxfLWPOLYLINE.readEntity(raf, dxfEntities.entities);
+                    group = DxfLWPOLYLINE.readEntity(raf, dxfFile, dxfEntities.entities);
+                }
+                else if (group.getValue().equals("ARC") || group.getValue().equals("CIRCLE")) {
+                    group = DxfARC.readEntity(raf, dxfFile, dxfEntities.entities);
+                }
+                else if (group.getValue().equals("ELLIPSE")) {
+                    group = DxfELLIPSE.readEntity(raf, dxfFile, dxfEntities.entities);
+                }
+                else if (group.getValue().equals("SPLINE")) {
+                    group = DxfSPLINE.readEntity(raf, dxfFile, dxfEntities.entities);
+                }
+                else if (group.getValue().equals("HATCH")) {
+                    group = DxfHATCH.readEntity(raf, dxfFile, dxfEntities.entities);
+                }
+                else if (group.getValue().equals("MTEXT")) {
+                    group = DxfMTEXT.readEntity(raf, dxfFile, dxfEntities.entities);
+                }
+                else if (group.getValue().equals("3DFACE") || group.getValue().equals("SOLID") ||
+                         group.getValue().equals("TRACE")) {
+                    group = DxfFACE.readEntity(raf, dxfFile, dxfEntities.entities, group.getValue(), merger);
+                }
+                else if (group.getValue().equals("INSERT")) {
+                    group = DxfINSERT.readEntity(raf, dxfFile, dxfEntities.entities);
                 }
                 else {
                     group = DxfGroup.readGroup(raf);
                 }
+                dxfFile.indexEntity(raf, start, group.getAddress(), dxfEntities.entities, first);
             }
             else {
                 group = DxfGroup.readGroup(raf);
             }
         }
+        // merged faces are added after the indexed entities : they have no
+        // handle
+        if (merger != null) merger.addTo(dxfEntities.entities);
         return dxfEntities;
     }
 
@@ -97,19 +133,28 @@ public class DxfENTITIES {
         return sb.toString();
     }
 
+   /**
+    * Write the ENTITIES section into bw, which is flushed but not closed.
+    * @deprecated use {@link #write(DxfOutput, String)}
+    */
+    @Deprecated
     public void write(BufferedWriter bw, String defaultLayer) throws IOException {
+        DxfOutput out = new DxfOutput(bw);
+        write(out, defaultLayer);
+        out.flush();
+    }
+
+    public void write(DxfOutput out, String defaultLayer) throws IOException {
         Iterator<Feature> it = entities.iterator();
         Feature feature;
-        bw.write(DxfFile.SECTION.toString());
-        bw.write(DxfFile.ENTITIES.toString());
+        out.write(DxfFile.SECTION.toString());
+        out.write(DxfFile.ENTITIES.toString());
+        DxfAttributePlan plan = DxfAttributePlan.get(entities.getFeatureSchema());
         while (it.hasNext()) {
             feature = it.next();
-            String entity = DxfENTITY.feature2Dxf(feature, defaultLayer, true);
-            if (entity != null) {
-                bw.write(entity);
-            }
+            DxfENTITY.feature2Dxf(feature, plan, defaultLayer, true, out);
         }
-        bw.write(DxfFile.ENDSEC.toString());
+        out.write(DxfFile.ENDSEC.toString());
     }
 
 }
@@ -25,8 +25,13 @@
 package fr.michaelm.jump.drivers.dxf;
 
 
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+
 import com.vividsolutions.jump.feature.Feature;
 import org.locationtech.jts.geom.*;
+import org.locationtech.jts.simplify.TopologyPreservingSimplifier;
 
 
 /**
@@ -64,6 +69,8 @@ public class DxfENTITY {
     public final static DxfGroup DIMENSION = new DxfGroup(0, "DIMENSION");
     public final static PrecisionModel DPM = new PrecisionModel();
     public static int precision = 4;
+    // Owner of the entities which are not part of a POLYLINE
+    private static final long MODEL_SPACE = -1L;
 
     private String layerName = "DEFAULT";
 
@@ -77,227 +84,399 @@ public class DxfENTITY {
         this.layerName = layerName;
     }
 
+   /**
+    * Format a feature as DXF entities and return the resulting String.
+    * Prefer {@link #feature2Dxf(Feature, String, boolean, DxfOutput)} to
+    * write many features.
+    */
     public static String feature2Dxf(Feature feature, String layerName, boolean suffix) {
-        Geometry g = feature.getGeometry();
+        StringWriter sw = new StringWriter();
+        try {
+            DxfOutput out = new DxfOutput(sw);
+            feature2Dxf(feature, layerName, suffix, out);
+            out.flush();
+        } catch(IOException e) {
+            // never happens with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return sw.getBuffer().length() == 0 ? null : sw.toString();
+    }
+
+   /**
+    * Write a feature as DXF entities into out.
+    * Geometries other than points, linestrings, polygons and collections of
+    * these are ignored.
+    * Prefer {@link #feature2Dxf(Feature, DxfAttributePlan, String, boolean,
+    * DxfOutput)} to write many features, resolving the plan once.
+    */
+    public static void feature2Dxf(Feature feature, String layerName,
+                                   boolean suffix, DxfOutput out) throws IOException {
+        feature2Dxf(feature, DxfAttributePlan.get(feature.getSchema()), layerName, suffix, out);
+    }
+
+   /**
+    * Write a feature as DXF entities into out, reading its attributes with
+    * plan (resolved again if feature does not have the schema of plan).
+    */
+    public static void feature2Dxf(Feature feature, DxfAttributePlan plan, String layerName,
+                                   boolean suffix, DxfOutput out) throws IOException {
+        plan = plan.of(feature);
+        Geometry geometry = feature.getGeometry();
+        // simplification of the whole geometry, other ones are simplified
+        // line by line while they are written
+        if (out.getSimplifyTolerance() > 0.0 && out.isTopologyPreserving()) {
+            geometry = TopologyPreservingSimplifier.simplify(geometry, out.getSimplifyTolerance());
+        }
+        geometry2Dxf(feature, plan, geometry, layerName, suffix, out);
+    }
+
+   /**
+    * Write g as DXF entities into out, with the attributes of feature.
+    * Parts of a GeometryCollection are written with the attributes of the
+    * same feature.
+    */
+    public static void geometry2Dxf(Feature feature, DxfAttributePlan plan, Geometry g,
+                                    String layerName, boolean suffix, DxfOutput out) throws IOException {
         if (g.getGeometryType().equals("Point")) {
-            return point2Dxf(feature, layerName);
+            point2Dxf(feature, plan, (Point)g, layerName, out);
         }
         else if (g.getGeometryType().equals("LineString")) {
-            return lineString2Dxf(feature, layerName);
+            lineString2Dxf(feature, plan, (LineString)g, layerName, out);
         }
         else if (g.getGeometryType().equals("Polygon")) {
-            return polygon2Dxf(feature, layerName, suffix);
+            polygon2Dxf(feature, plan, (Polygon)g, layerName, suffix, out);
         }
         else if (g instanceof GeometryCollection) {
-            StringBuilder sb = new StringBuilder();
             for (int i = 0 ; i < g.getNumGeometries() ; i++) {
-                Feature ff = feature.clone(true);
-                ff.setGeometry(g.getGeometryN(i));
-                sb.append(feature2Dxf(ff, layerName, suffix));
+                geometry2Dxf(feature, plan, g.getGeometryN(i), layerName, suffix, out);
             }
-            return sb.toString();
-        }
-        else {
-            return null;
         }
     }
 
-    public static String point2Dxf(Feature feature, String layerName) {
-        StringBuilder sb;
-        boolean hasText = (feature.getSchema().hasAttribute("TEXT") &&
-                           feature.getAttribute("TEXT") != null);
-        if (hasText) {sb = new StringBuilder(DxfGroup.toString(0, "TEXT"));}
-        else {sb = new StringBuilder(DxfGroup.toString(0, "POINT"));}
-        if (feature.getSchema().hasAttribute("LAYER") &&
-            !feature.getString("LAYER").trim().equals("")) {
-            sb.append(DxfGroup.toString(8, feature.getAttribute("LAYER")));
-        }
-        else {sb.append(DxfGroup.toString(8, layerName));}
-        if (feature.getSchema().hasAttribute("LTYPE") &&
-            !feature.getAttribute("LTYPE").equals("BYLAYER")) {
-            sb.append(DxfGroup.toString(6, feature.getAttribute("LTYPE")));
+    public static void point2Dxf(Feature feature, DxfAttributePlan plan, Point point,
+                                 String layerName, DxfOutput out) throws IOException {
+        Object text = DxfAttributePlan.value(feature, plan.text);
+        boolean hasText = text != null;
+        entity2Dxf(hasText ? "TEXT" : "POINT", plan.layer(feature, layerName), MODEL_SPACE, out);
+        Object ltype = DxfAttributePlan.value(feature, plan.ltype);
+        if (ltype != null && !ltype.equals("BYLAYER")) {
+            out.linetype(ltype);
         }
         //if (feature.getSchema().hasAttribute("ELEVATION") &&
         //    feature.getAttribute("ELEVATION") != null &&
         //    !feature.getAttribute("ELEVATION").equals(new Float(0f))) {
-        //    sb.append(DxfGroup.toString(38, feature.getAttribute("ELEVATION")));
+        //    out.group(38, feature.getAttribute("ELEVATION"));
         //}
-        if (feature.getSchema().hasAttribute("THICKNESS") &&
-            feature.getAttribute("THICKNESS") != null &&
-            !feature.getAttribute("THICKNESS").equals(0f)) {
-            sb.append(DxfGroup.toString(39, feature.getAttribute("THICKNESS")));
-        }
-        if (feature.getSchema().hasAttribute("COLOR") &&
-            feature.getAttribute("COLOR") != null &&
-            (Integer)feature.getAttribute("COLOR") != 256) {
-            sb.append(DxfGroup.toString(62, feature.getAttribute("COLOR").toString()));
-        }
-        Coordinate coord = feature.getGeometry().getCoordinate();
-        sb.append(DxfGroup.toString(10, coord.x, precision));
-        sb.append(DxfGroup.toString(20, coord.y, precision));
-        if (!Double.isNaN(coord.z)) sb.append(DxfGroup.toString(30, coord.z, precision));
-        if (hasText) {
-            sb.append(DxfGroup.toString(1, feature.getAttribute("TEXT")));
+        Object color = DxfAttributePlan.value(feature, plan.color);
+        if (color != null && (Integer)color != 256) {
+            out.group(62, color.toString());
         }
-        if (hasText && feature.getSchema().hasAttribute("TEXT_HEIGHT") &&
-            feature.getAttribute("TEXT_HEIGHT") != null) {
-            sb.append(DxfGroup.toString(40, feature.getAttribute("TEXT_HEIGHT")));
+        subclass2Dxf(hasText ? "AcDbText" : "AcDbPoint", out);
+        Object thickness = DxfAttributePlan.value(feature, plan.thickness);
+        if (thickness != null && !thickness.equals(0f)) {
+            out.group(39, thickness);
         }
-        if (hasText && feature.getSchema().hasAttribute("TEXT_ROTATION") &&
-            feature.getAttribute("TEXT_ROTATION") != null) {
-            sb.append(DxfGroup.toString(50, feature.getAttribute("TEXT_ROTATION")));
-        }
-        if (hasText && feature.getSchema().hasAttribute("TEXT_STYLE") &&
-            feature.getAttribute("TEXT_STYLE") != null) {
-            sb.append(DxfGroup.toString(7, feature.getAttribute("TEXT_STYLE")));
+        Coordinate coord = point.getCoordinate();
+        int precision = out.getPrecision();
+        out.group(10, coord.x, precision);
+        out.group(20, coord.y, precision);
+        if (!Double.isNaN(coord.z)) out.group(30, coord.z, precision);
+        if (hasText) {
+            out.group(1, text);
+            Object textHeight = DxfAttributePlan.value(feature, plan.textHeight);
+            if (textHeight != null) out.group(40, textHeight);
+            Object textRotation = DxfAttributePlan.value(feature, plan.textRotation);
+            if (textRotation != null) out.group(50, textRotation);
+            Object textStyle = DxfAttributePlan.value(feature, plan.textStyle);
+            if (textStyle != null) out.group(7, textStyle);
+            subclass2Dxf("AcDbText", out);
         }
-        return sb.toString();
     }
 
-    public static String lineString2Dxf(Feature feature, String layerName) {
-        LineString geom = (LineString)feature.getGeometry();
-        Coordinate[] coords = geom.getCoordinates();
+    public static void lineString2Dxf(Feature feature, DxfAttributePlan plan, LineString geom,
+                                      String layerName, DxfOutput out) throws IOException {
+        Coordinate[] coords = vertices(geom.getCoordinates(), out);
+        // linestring reduced to a point by the precision
+        if (isFiltered(out) && coords.length < 2) return;
+        if (out.isLwPolyline() && coords.length > 2 && isPlanar(coords)) {
+            lwPolyline2Dxf(feature, plan, plan.layer(feature, layerName), coords, false, out);
+            return;
+        }
         // Correction added by L. Becker and R Littlefield on 2006-11-08
         // It writes 2 points-only polylines in a line instead of a polyline
         // to make it possible to incorporate big dataset in View32
         boolean isLine = (coords.length == 2);
-        StringBuilder sb;
-        if (!isLine) {
-        	sb = new StringBuilder(DxfGroup.toString(0, "POLYLINE"));
-        }
-        else {
-            sb = new StringBuilder(DxfGroup.toString(0, "LINE"));
-        }
-        if (feature.getSchema().hasAttribute("LAYER") &&
-            !feature.getString("LAYER").trim().equals("")) {
-            sb.append(DxfGroup.toString(8, feature.getAttribute("LAYER")));
+        Object layer = plan.layer(feature, layerName);
+        entity2Dxf(isLine ? "LINE" : "POLYLINE", layer, MODEL_SPACE, out);
+        long polyline = out.lastHandle();
+        Object ltype = DxfAttributePlan.value(feature, plan.ltype);
+        if (ltype != null && !ltype.equals("BYLAYER")) {
+            out.linetype(ltype);
         }
-        else {sb.append(DxfGroup.toString(8, layerName));}
-        if (feature.getSchema().hasAttribute("LTYPE") &&
-            !feature.getAttribute("LTYPE").equals("BYLAYER")) {
-            sb.append(DxfGroup.toString(6, feature.getAttribute("LTYPE")));
+        Object color = DxfAttributePlan.value(feature, plan.color);
+        if (color != null) {
+            out.group(62, color.toString());
         }
-        if (feature.getSchema().hasAttribute("ELEVATION") &&
-            feature.getAttribute("ELEVATION") != null) {
-            sb.append(DxfGroup.toString(38, feature.getAttribute("ELEVATION")));
+        subclass2Dxf(isLine ? "AcDbLine" : "AcDb3dPolyline", out);
+        // R2000 LINE and POLYLINE have no elevation group
+        Object elevation = DxfAttributePlan.value(feature, plan.elevation);
+        if (elevation != null && !out.isAC1015()) {
+            out.group(38, elevation);
         }
-        if (feature.getSchema().hasAttribute("THICKNESS") &&
-            feature.getAttribute("THICKNESS") != null) {
-            sb.append(DxfGroup.toString(39, feature.getAttribute("THICKNESS")));
-        }
-        if (feature.getSchema().hasAttribute("COLOR") &&
-            feature.getAttribute("THICKNESS") != null) {
-            sb.append(DxfGroup.toString(62, feature.getAttribute("COLOR").toString()));
+        Object thickness = DxfAttributePlan.value(feature, plan.thickness);
+        if (thickness != null) {
+            out.group(39, thickness);
         }
         // modified by L. Becker and R. Littlefield (add the Line case)
         if (isLine){
-            sb.append(DxfGroup.toString(10, coords[0].x, precision));
-            sb.append(DxfGroup.toString(20, coords[0].y, precision));
+            int precision = out.getPrecision();
+            out.group(10, coords[0].x, precision);
+            out.group(20, coords[0].y, precision);
 	        if (!Double.isNaN(coords[0].z)) {
-	            sb.append(DxfGroup.toString(30, coords[0].z, precision));
+	            out.group(30, coords[0].z, precision);
 	        }
-            sb.append(DxfGroup.toString(11, coords[1].x, precision));
-            sb.append(DxfGroup.toString(21, coords[1].y, precision));
+            out.group(11, coords[1].x, precision);
+            out.group(21, coords[1].y, precision);
 	        if (!Double.isNaN(coords[1].z)) {
-	            sb.append(DxfGroup.toString(31, coords[1].z, precision));
+	            out.group(31, coords[1].z, precision);
 	        }
         }
         else {
-            sb.append(DxfGroup.toString(66, 1));
-            sb.append(DxfGroup.toString(10, "0.0"));
-            sb.append(DxfGroup.toString(20, "0.0"));
-            if (!Double.isNaN(coords[0].z)) sb.append(DxfGroup.toString(30, "0.0"));
-            sb.append(DxfGroup.toString(70, 8));
+            out.group(66, 1);
+            out.group(10, "0.0");
+            out.group(20, "0.0");
+            if (!Double.isNaN(coords[0].z)) out.group(30, "0.0");
+            out.group(70, 8);
             
             for (Coordinate coord : coords) {
-                sb.append(DxfGroup.toString(0, "VERTEX"));
-                if (feature.getSchema().hasAttribute("LAYER") &&
-                    !feature.getString("LAYER").trim().equals("")) {
-                    sb.append(DxfGroup.toString(8, feature.getAttribute("LAYER")));
-                }
-                else {sb.append(DxfGroup.toString(8, layerName));}
-                sb.append(DxfGroup.toString(10, coord.x, precision));
-                sb.append(DxfGroup.toString(20, coord.y, precision));
-                if (!Double.isNaN(coord.z)) sb.append(DxfGroup.toString(30, coord.z, precision));
-                sb.append(DxfGroup.toString(70, 32));
+                vertex2Dxf(layer, coord, polyline, out);
             }
-            sb.append(DxfGroup.toString(0, "SEQEND"));
+            seqend2Dxf(layer, polyline, out);
         }
-        return sb.toString();
     }
 
-    public static String polygon2Dxf(Feature feature, String layerName, boolean suffix) {
-        Polygon geom = (Polygon)feature.getGeometry();
-        Coordinate[] coords = geom.getExteriorRing().getCoordinates();
-        StringBuilder sb = new StringBuilder(DxfGroup.toString(0, "POLYLINE"));
-        sb.append(DxfGroup.toString(8, layerName));
-        if (feature.getSchema().hasAttribute("LTYPE") &&
-                feature.getAttribute("LTYPE") != null &&
-                !feature.getAttribute("LTYPE").equals("BYLAYER")) {
-            sb.append(DxfGroup.toString(6, feature.getAttribute("LTYPE")));
-        }
-        if (feature.getSchema().hasAttribute("ELEVATION") &&
-            feature.getAttribute("ELEVATION") != null) {
-            sb.append(DxfGroup.toString(38, feature.getAttribute("ELEVATION")));
-        }
-        if (feature.getSchema().hasAttribute("THICKNESS") &&
-            feature.getAttribute("THICKNESS") != null) {
-            sb.append(DxfGroup.toString(39, feature.getAttribute("THICKNESS")));
-        }
-        if (feature.getSchema().hasAttribute("COLOR") &&
-            feature.getAttribute("COLOR") != null) {
-            sb.append(DxfGroup.toString(62, feature.getAttribute("COLOR").toString()));
-        }
-        sb.append(DxfGroup.toString(66, 1));
-        sb.append(DxfGroup.toString(10, "0.0"));
-        sb.append(DxfGroup.toString(20, "0.0"));
-        if (!Double.isNaN(coords[0].z)) sb.append(DxfGroup.toString(30, "0.0"));
-        sb.append(DxfGroup.toString(70, 9));
+    public static void polygon2Dxf(Feature feature, DxfAttributePlan plan, Polygon geom,
+                                   String layerName, boolean suffix, DxfOutput out) throws IOException {
+        Object ltype = DxfAttributePlan.value(feature, plan.ltype);
+        boolean writeLtype = ltype != null && !ltype.equals("BYLAYER");
+        Object elevation = DxfAttributePlan.value(feature, plan.elevation);
+        Object thickness = DxfAttributePlan.value(feature, plan.thickness);
+        Object color = DxfAttributePlan.value(feature, plan.color);
+        Coordinate[] coords = vertices(geom.getExteriorRing().getCoordinates(), out);
+        // polygon reduced to a segment or a point by the precision or the
+        // simplification
+        if (isDegenerateRing(coords, out)) return;
+        String holeLayerName = suffix ? layerName + "_" : layerName;
+        if (out.isLwPolyline() && isPlanar(geom)) {
+            lwPolyline2Dxf(feature, plan, layerName, coords, true, out);
+            for (int h = 0 ; h < geom.getNumInteriorRing() ; h++) {
+                Coordinate[] hole = vertices(geom.getInteriorRingN(h).getCoordinates(), out);
+                if (isDegenerateRing(hole, out)) continue;
+                lwPolyline2Dxf(feature, plan, holeLayerName, hole, true, out);
+            }
+            return;
+        }
+        entity2Dxf("POLYLINE", layerName, MODEL_SPACE, out);
+        long polyline = out.lastHandle();
+        if (writeLtype) {
+            out.linetype(ltype);
+        }
+        if (color != null) {
+            out.group(62, color.toString());
+        }
+        subclass2Dxf("AcDb3dPolyline", out);
+        if (elevation != null && !out.isAC1015()) {
+            out.group(38, elevation);
+        }
+        if (thickness != null) {
+            out.group(39, thickness);
+        }
+        out.group(66, 1);
+        out.group(10, "0.0");
+        out.group(20, "0.0");
+        if (!Double.isNaN(coords[0].z)) out.group(30, "0.0");
+        out.group(70, 9);
         for (Coordinate coord : coords) {
-            sb.append(DxfGroup.toString(0, "VERTEX"));
-            sb.append(DxfGroup.toString(8, layerName));
-            sb.append(DxfGroup.toString(10, coord.x, precision));
-            sb.append(DxfGroup.toString(20, coord.y, precision));
-            if (!Double.isNaN(coord.z)) sb.append(DxfGroup.toString(30, coord.z, precision));
-            sb.append(DxfGroup.toString(70, 32));
-        }
-        sb.append(DxfGroup.toString(0, "SEQEND"));
+            vertex2Dxf(layerName, coord, polyline, out);
+        }
+        seqend2Dxf(layerName, polyline, out);
         for (int h = 0 ; h < geom.getNumInteriorRing() ; h++) {
             //System.out.println("polygon2Dxf (hole)" + suffix);
-            sb.append(DxfGroup.toString(0, "POLYLINE"));
-            if (suffix) sb.append(DxfGroup.toString(8, layerName+"_"));
-            else sb.append(DxfGroup.toString(8, layerName));
-            if (feature.getSchema().hasAttribute("LTYPE") &&
-                !feature.getAttribute("LTYPE").equals("BYLAYER")) {
-                sb.append(DxfGroup.toString(6, feature.getAttribute("LTYPE")));
+            Coordinate[] hole = vertices(geom.getInteriorRingN(h).getCoordinates(), out);
+            if (isDegenerateRing(hole, out)) continue;
+            entity2Dxf("POLYLINE", holeLayerName, MODEL_SPACE, out);
+            polyline = out.lastHandle();
+            if (writeLtype) {
+                out.linetype(ltype);
             }
-            if (feature.getSchema().hasAttribute("THICKNESS") &&
-                feature.getAttribute("THICKNESS") != null) {
-                sb.append(DxfGroup.toString(39, feature.getAttribute("THICKNESS")));
+            if (color != null) {
+                out.group(62, color);
             }
-            if (feature.getSchema().hasAttribute("COLOR") &&
-                feature.getAttribute("COLOR") != null) {
-                sb.append(DxfGroup.toString(62, feature.getAttribute("COLOR")));
+            subclass2Dxf("AcDb3dPolyline", out);
+            if (thickness != null) {
+                out.group(39, thickness);
             }
-            sb.append(DxfGroup.toString(66, 1));
-            sb.append(DxfGroup.toString(10, "0.0"));
-            sb.append(DxfGroup.toString(20, "0.0"));
-            if (!Double.isNaN(coords[0].z)) sb.append(DxfGroup.toString(30, "0.0"));
-            sb.append(DxfGroup.toString(70, 9));
-            coords = geom.getInteriorRingN(h).getCoordinates();
+            out.group(66, 1);
+            out.group(10, "0.0");
+            out.group(20, "0.0");
+            if (!Double.isNaN(coords[0].z)) out.group(30, "0.0");
+            out.group(70, 9);
+            coords = hole;
             for (Coordinate coord : coords) {
-                sb.append(DxfGroup.toString(0, "VERTEX"));
-                if (suffix) sb.append(DxfGroup.toString(8, layerName+"_"));
-                else sb.append(DxfGroup.toString(8, layerName));
-                sb.append(DxfGroup.toString(10, coord.x, precision));
-                sb.append(DxfGroup.toString(20, coord.y, precision));
-                if (!Double.isNaN(coord.z)) sb.append(DxfGroup.toString(30, coord.z, precision));
-                sb.append(DxfGroup.toString(70, 32));
+                vertex2Dxf(holeLayerName, coord, polyline, out);
+            }
+            seqend2Dxf(holeLayerName, polyline, out);
+        }
+    }
+
+   /**
+    * Write coords as a LWPOLYLINE.
+    * If closed, the last coordinate, equal to the first one, is not written.
+    * The z of planar coordinates is written as the elevation.
+    */
+    private static void lwPolyline2Dxf(Feature feature, DxfAttributePlan plan,
+                                       Object layer, Coordinate[] coords,
+                                       boolean closed, DxfOutput out) throws IOException {
+        entity2Dxf("LWPOLYLINE", layer, MODEL_SPACE, out);
+        Object ltype = DxfAttributePlan.value(feature, plan.ltype);
+        if (ltype != null && !ltype.equals("BYLAYER")) {
+            out.linetype(ltype);
+        }
+        Object color = DxfAttributePlan.value(feature, plan.color);
+        if (color != null) {
+            out.group(62, color);
+        }
+        subclass2Dxf("AcDbPolyline", out);
+        int size = closed ? coords.length - 1 : coords.length;
+        // written as a String : int6car would truncate more than 999999 vertices
+        out.group(90, Integer.toString(size));
+        out.group(70, closed ? 1 : 0);
+        Object elevation = DxfAttributePlan.value(feature, plan.elevation);
+        int precision = out.getPrecision();
+        if (!Double.isNaN(coords[0].z)) {
+            out.group(38, coords[0].z, precision);
+        }
+        else if (elevation != null) {
+            out.group(38, elevation);
+        }
+        Object thickness = DxfAttributePlan.value(feature, plan.thickness);
+        if (thickness != null) {
+            out.group(39, thickness);
+        }
+        for (int i = 0 ; i < size ; i++) {
+            out.group(10, coords[i].x, precision);
+            out.group(20, coords[i].y, precision);
+        }
+    }
+
+   /**
+    * Write the beginning of an entity : its type, its handle and its owner
+    * in a R2000 file, and its layer.
+    * The owner is the model space (MODEL_SPACE), or the POLYLINE for the
+    * VERTEX and SEQEND entities which are part of it (a reference returned
+    * by {@link DxfOutput#lastHandle()}).
+    */
+    private static void entity2Dxf(String type, Object layer,
+                                   long owner, DxfOutput out) throws IOException {
+        out.group(0, type);
+        if (out.isR2000()) {
+            out.handle(5);
+            if (owner == MODEL_SPACE) out.group(330, DxfR2000.MODEL_SPACE);
+            else out.handleReference(330, owner);
+        }
+        if (out.isAC1015()) out.group(100, "AcDbEntity");
+        out.group(8, layer);
+    }
+
+    // Subclass markers are only written in AC1015 files
+    private static void subclass2Dxf(String subclass, DxfOutput out) throws IOException {
+        if (out.isAC1015()) out.group(100, subclass);
+    }
+
+    private static void vertex2Dxf(Object layer, Coordinate coord,
+                                   long polyline, DxfOutput out) throws IOException {
+        entity2Dxf("VERTEX", layer, polyline, out);
+        subclass2Dxf("AcDbVertex", out);
+        subclass2Dxf("AcDb3dPolylineVertex", out);
+        int precision = out.getPrecision();
+        out.group(10, coord.x, precision);
+        out.group(20, coord.y, precision);
+        if (!Double.isNaN(coord.z)) out.group(30, coord.z, precision);
+        out.group(70, 32);
+    }
+
+    // R12 SEQEND has no layer
+    private static void seqend2Dxf(Object layer, long polyline,
+                                   DxfOutput out) throws IOException {
+        if (out.isAC1015()) entity2Dxf("SEQEND", layer, polyline, out);
+        else out.group(0, "SEQEND");
+    }
+
+   /**
+    * Return the vertices to write for a linestring or a ring : coords
+    * simplified with the tolerance of out, without duplicate vertices.
+    */
+    private static Coordinate[] vertices(Coordinate[] coords, DxfOutput out) {
+        if (out.getSimplifyTolerance() > 0.0 && !out.isTopologyPreserving()) {
+            coords = DxfSimplifier.simplify(coords, out.getSimplifyTolerance());
+        }
+        return removeDuplicates(coords, out);
+    }
+
+    // Vertices may be removed
+    private static boolean isFiltered(DxfOutput out) {
+        return out.isQuantized() || out.getSimplifyTolerance() > 0.0;
+    }
+
+   /**
+    * Return coords without the vertices which are written with the same
+    * values as the previous one, if out is quantized.
+    * coords itself is returned if no vertex is removed.
+    */
+    private static Coordinate[] removeDuplicates(Coordinate[] coords, DxfOutput out) {
+        if (!out.isQuantized()) return coords;
+        int precision = out.getPrecision();
+        Coordinate[] kept = null;
+        int size = Math.min(coords.length, 1);
+        for (int i = 1 ; i < coords.length ; i++) {
+            Coordinate previous = kept == null ? coords[i - 1] : kept[size - 1];
+            if (isSameVertex(previous, coords[i], precision)) {
+                if (kept == null) kept = Arrays.copyOf(coords, coords.length);
             }
-            sb.append(DxfGroup.toString(0, "SEQEND"));
+            else {
+                if (kept != null) kept[size] = coords[i];
+                size++;
+            }
+        }
+        return kept == null ? coords : Arrays.copyOf(kept, size);
+    }
+
+    private static boolean isSameVertex(Coordinate c1, Coordinate c2, int precision) {
+        return DxfNumberFormat.isSameValue(c1.x, c2.x, precision) &&
+               DxfNumberFormat.isSameValue(c1.y, c2.y, precision) &&
+               DxfNumberFormat.isSameValue(c1.z, c2.z, precision);
+    }
+
+    // A closed ring needs at least 3 distinct vertices
+    private static boolean isDegenerateRing(Coordinate[] coords, DxfOutput out) {
+        return isFiltered(out) && coords.length < 4;
+    }
+
+    // LWPOLYLINE has a single elevation : coordinates must have the same z
+    private static boolean isPlanar(Coordinate[] coords) {
+        double z = coords[0].z;
+        for (Coordinate coord : coords) {
+            if (Double.isNaN(z) ? !Double.isNaN(coord.z) : coord.z != z) return false;
+        }
+        return true;
+    }
+
+    private static boolean isPlanar(Polygon polygon) {
+        if (!isPlanar(polygon.getExteriorRing().getCoordinates())) return false;
+        for (int h = 0 ; h < polygon.getNumInteriorRing() ; h++) {
+            if (!isPlanar(polygon.getInteriorRingN(h).getCoordinates())) return false;
         }
-        
-        return sb.toString();
+        return true;
     }
 
 }
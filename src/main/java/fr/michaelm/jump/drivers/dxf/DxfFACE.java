@@ -0,0 +1,117 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.RandomAccessFile;
+import java.io.IOException;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateList;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * 3DFACE, SOLID and TRACE DXF entities.
+ * This class has a static method reading one of these entities and adding
+ * a Polygon feature to a FeatureCollection, or to a DxfFaceMerger merging
+ * faces of a same layer into a single MultiPolygon.
+ * The third and fourth corners of SOLID and TRACE entities are swapped, so
+ * that corners are in the ring order.
+ * @author Michaël Michaud
+ */
+public class DxfFACE extends DxfENTITY {
+
+    public DxfFACE() {super("DEFAULT");}
+
+   /**
+    * Read the entity following a 3DFACE, SOLID or TRACE group (type is the
+    * value of this group). If merger is not null, the face is added to
+    * merger instead of entities.
+    */
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, FeatureCollection entities,
+                                      String type, DxfFaceMerger merger) throws IOException {
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
+        feature.setAttribute("LTYPE", "BYLAYER");
+        feature.setAttribute("THICKNESS", 0.0);
+        feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
+        double[] x = new double[]{Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        double[] y = new double[]{Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        double[] z = new double[]{Double.NaN, Double.NaN, Double.NaN, Double.NaN};
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
+        DxfGroup group;
+        while (null != (group = DxfGroup.readGroup(raf))) {
+            int code = group.getCode();
+            if (code==0) break;
+            if (DxfFile.DEBUG) group.print(12);
+            if (code==8) feature.setAttribute("LAYER", group.getValue());
+            else if (code==6) feature.setAttribute("LTYPE", group.getValue());
+            else if (code==39) feature.setAttribute("THICKNESS", group.getDoubleValue());
+            else if (code==62) feature.setAttribute("COLOR", group.getIntValue());
+            else if (code>=10 && code<=13) x[code-10] = group.getDoubleValue();
+            else if (code>=20 && code<=23) y[code-20] = group.getDoubleValue();
+            else if (code>=30 && code<=33) z[code-30] = group.getDoubleValue();
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
+            //else {}
+        }
+        // a triangle has its fourth corner equal to the third one
+        if (Double.isNaN(x[3]) || Double.isNaN(y[3])) {
+            x[3] = x[2]; y[3] = y[2]; z[3] = z[2];
+        }
+        boolean swap = !_3DFACE.getValue().equals(type);
+        CoordinateList coordList = new CoordinateList();
+        for (int i = 0 ; i < 4 ; i++) {
+            int k = swap && i >= 2 ? 5 - i : i;
+            if (Double.isNaN(x[k]) || Double.isNaN(y[k])) return group;
+            coordList.add(new Coordinate(x[k], y[k], z[k]), false);
+        }
+        if (coordList.size() > 1 && coordList.getCoordinate(0).equals2D(coordList.getCoordinate(coordList.size()-1))) {
+            coordList.remove(coordList.size()-1);
+        }
+        if (merger != null) {
+            if (coordList.size() > 2) merger.add(feature, coordList);
+            return group;
+        }
+        GeometryFactory gf = dxfFile.getGeometryFactory();
+        if (coordList.size() == 1) {
+            feature.setGeometry(gf.createPoint(coordList.getCoordinate(0)));
+        }
+        else if (coordList.size() == 2) {
+            feature.setGeometry(gf.createLineString(coordList.toCoordinateArray()));
+        }
+        else {
+            coordList.closeRing();
+            feature.setGeometry(gf.createPolygon(gf.createLinearRing(coordList.toCoordinateArray())));
+        }
+        if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+        dxfFile.readXData(raf, feature, xdata, group.getAddress());
+        entities.add(feature);
+        return group;
+    }
+
+}
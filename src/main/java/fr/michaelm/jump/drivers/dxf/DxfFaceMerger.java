@@ -0,0 +1,97 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateList;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Merge of the faces (3DFACE, SOLID, TRACE) of each layer into a single
+ * MultiPolygon feature, as for a TIN.
+ * Each face has its own Coordinate instances, as a Coordinate shared by
+ * several rings would be moved with all of them by an edit of one face.
+ * Attributes of a merged feature are the ones of the first face of the
+ * layer. The XDATA of the faces are dropped, and merged features are not
+ * indexed by handle (they have no HANDLE attribute).
+ * @author Michaël Michaud
+ */
+public class DxfFaceMerger {
+
+    private final GeometryFactory factory;
+
+    // First face and faces of each layer
+    private final Map<String,Feature> features = new LinkedHashMap<>();
+    private final Map<String,List<Polygon>> faces = new HashMap<>();
+
+    public DxfFaceMerger(GeometryFactory factory) {
+        this.factory = factory;
+    }
+
+   /**
+    * Add the face of feature, made of the open ring of coordinates coordList.
+    */
+    public void add(Feature feature, CoordinateList coordList) {
+        Coordinate[] ring = new Coordinate[coordList.size() + 1];
+        for (int i = 0 ; i < coordList.size() ; i++) {
+            ring[i] = coordList.getCoordinate(i);
+        }
+        ring[ring.length - 1] = new Coordinate(ring[0]);
+        String layer = feature.getString("LAYER");
+        List<Polygon> polygons = faces.get(layer);
+        if (polygons == null) {
+            polygons = new ArrayList<>();
+            faces.put(layer, polygons);
+            features.put(layer, feature);
+        }
+        polygons.add(factory.createPolygon(factory.createLinearRing(ring)));
+    }
+
+   /**
+    * Add a MultiPolygon feature per layer to entities.
+    */
+    public void addTo(FeatureCollection entities) {
+        for (Map.Entry<String,Feature> entry : features.entrySet()) {
+            Feature feature = entry.getValue();
+            List<Polygon> polygons = faces.get(entry.getKey());
+            feature.setGeometry(factory.createMultiPolygon(polygons.toArray(new Polygon[0])));
+            if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + polygons.size() + " faces");
+            entities.add(feature);
+        }
+        features.clear();
+        faces.clear();
+    }
+
+}
@@ -27,8 +27,24 @@ package fr.michaelm.jump.drivers.dxf;
 import java.io.RandomAccessFile;
 import java.io.IOException;
 import java.io.File;
-import java.io.FileWriter;
+import java.io.InterruptedIOException;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.zip.CRC32;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import javax.swing.JFileChooser;
 import javax.swing.JFrame;
 import com.vividsolutions.jump.feature.Feature;
@@ -73,6 +89,32 @@ public class DxfFile {
     private DxfBLOCKS blocks = null;
     private DxfENTITIES entities = null;
     private int coordinatePrecision = 2;
+    private GeometryFactory geometryFactory = new GeometryFactory(DxfENTITY.DPM, 0);
+    private boolean insertInstances = false;
+    private boolean mergeFaces = false;
+    private DxfArcTessellator arcTessellator = new DxfArcTessellator(DxfArcTessellator.DEFAULT_TOLERANCE);
+    private DxfSplineEvaluator splineEvaluator = new DxfSplineEvaluator(DxfArcTessellator.DEFAULT_TOLERANCE);
+    private final DxfMTextStripper mTextStripper = new DxfMTextStripper();
+
+    // Raw XDATA of features, kept in slices of chunks of XDATA_CHUNK bytes,
+    // and XDATA values mapped to attributes (APPID, index, attribute name,
+    // attribute type)
+    private static final int XDATA_CHUNK = 1 << 16;
+    private boolean xdata = false;
+    private final List<String[]> xdataFields = new ArrayList<>();
+    private byte[] xdataChunk = new byte[0];
+    private int xdataChunkSize = 0;
+
+    // Index of entities by handle
+    private DxfHandleIndex handleIndex = null;
+    private byte[] entityBuffer = new byte[0];
+
+    // Schema of the features read, and indices of the HANDLE and XDATA
+    // attributes and of the attributes of xdataFields (-1 if absent)
+    private FeatureSchema schema = DXF_SCHEMA;
+    private int handleAttribute = -1;
+    private int xdataAttribute = -1;
+    private int[] xdataFieldAttributes = new int[0];
 
     FeatureCollection features;
     
@@ -116,16 +158,298 @@ public class DxfFile {
         this.coordinatePrecision = coordinatePrecision;
     }
     
+    public GeometryFactory getGeometryFactory() {
+        return geometryFactory;
+    }
+
+   /**
+    * Set the GeometryFactory used to create geometries of the entities read.
+    * Use a GeometryFactory with a {@link DxfCoordinateArena} to store
+    * coordinates outside the java heap.
+    */
+    public void setGeometryFactory(GeometryFactory geometryFactory) {
+        this.geometryFactory = geometryFactory;
+    }
+    
+    public DxfArcTessellator getArcTessellator() {
+        return arcTessellator;
+    }
+
+    public DxfSplineEvaluator getSplineEvaluator() {
+        return splineEvaluator;
+    }
+
+    public DxfMTextStripper getMTextStripper() {
+        return mTextStripper;
+    }
+
+   /**
+    * Set the maximum distance between ARC, CIRCLE, ELLIPSE and SPLINE
+    * entities and the segments used to read them.
+    */
+    public void setChordTolerance(double tolerance) {
+        this.arcTessellator = new DxfArcTessellator(tolerance);
+        this.splineEvaluator = new DxfSplineEvaluator(tolerance);
+    }
+
+   /**
+    * Read each INSERT as a single lightweight feature sharing the geometry
+    * of its block, instead of expanding it into a copy of every block
+    * entity. Its geometry is computed the first time it is asked for.
+    */
+    public void setInsertInstances(boolean insertInstances) {
+        this.insertInstances = insertInstances;
+    }
+
+    public boolean isInsertInstances() {
+        return insertInstances;
+    }
+
+   /**
+    * Merge 3DFACE, SOLID and TRACE entities of each layer into a single
+    * MultiPolygon feature.
+    * Merged features have no XDATA and no HANDLE, even if XDATA or handles
+    * are read, as they do not come from a single entity.
+    */
+    public void setMergeFaces(boolean mergeFaces) {
+        this.mergeFaces = mergeFaces;
+    }
+
+    public boolean isMergeFaces() {
+        return mergeFaces;
+    }
+
+   /**
+    * Keep the extended entity data (XDATA) of entities, and add them to the
+    * features read as an XDATA attribute, decoded when they are accessed.
+    * fields are values of applications mapped to attributes, as
+    * "APPID:index:NAME:TYPE" strings where index is the index of the value
+    * among the values of APPID, from 0 (NAME defaults to APPID_index), and
+    * TYPE is STRING (default), INTEGER or DOUBLE. These values only are
+    * decoded when the file is read.
+    */
+    public void setXData(boolean xdata, List<String> fields) {
+        this.xdata = xdata;
+        xdataFields.clear();
+        if (fields == null) return;
+        for (String field : fields) {
+            String[] tokens = field.trim().split(":");
+            if (tokens.length < 2) continue;
+            String name = tokens.length > 2 && tokens[2].trim().length() > 0 ?
+                    tokens[2].trim() : tokens[0].trim() + "_" + tokens[1].trim();
+            String type = tokens.length > 3 ? tokens[3].trim().toUpperCase() : "STRING";
+            xdataFields.add(new String[]{tokens[0].trim(), tokens[1].trim(), name, type});
+        }
+    }
+
+    public boolean isXData() {
+        return xdata;
+    }
+
+   /**
+    * Add the handle of entities to features as a HANDLE attribute, and
+    * build an index of entities by handle.
+    * Faces merged by {@link #setMergeFaces(boolean)} are not indexed.
+    */
+    public void setHandles(boolean handles) {
+        this.handleIndex = handles ? new DxfHandleIndex() : null;
+    }
+
+    public boolean isHandles() {
+        return handleIndex != null;
+    }
+
+   /**
+    * Return the index of the entities read by handle, or null if handles
+    * are not read.
+    */
+    public DxfHandleIndex getHandleIndex() {
+        return handleIndex;
+    }
+
+   /**
+    * Return the schema of the features read : {@link #DXF_SCHEMA}, with the
+    * HANDLE attribute, the XDATA attribute and the attributes mapped to
+    * XDATA values, depending on the options.
+    */
+    public FeatureSchema getSchema() {
+        return schema;
+    }
+
+    // Build the schema of the features before they are read
+    private void createSchema() {
+        handleAttribute = -1;
+        xdataAttribute = -1;
+        xdataFieldAttributes = new int[xdata ? xdataFields.size() : 0];
+        if (handleIndex == null && !xdata) {
+            schema = DXF_SCHEMA;
+            return;
+        }
+        schema = (FeatureSchema)DXF_SCHEMA.clone();
+        if (handleIndex != null) {
+            schema.addAttribute("HANDLE", AttributeType.STRING);
+            handleAttribute = schema.getAttributeIndex("HANDLE");
+        }
+        if (xdata) {
+            schema.addAttribute("XDATA", AttributeType.OBJECT);
+            xdataAttribute = schema.getAttributeIndex("XDATA");
+        }
+        for (int k = 0 ; k < xdataFieldAttributes.length ; k++) {
+            String[] field = xdataFields.get(k);
+            if (schema.hasAttribute(field[2])) {
+                xdataFieldAttributes[k] = -1;
+                continue;
+            }
+            AttributeType type = field[3].equals("INTEGER") ? AttributeType.INTEGER :
+                    field[3].equals("DOUBLE") ? AttributeType.DOUBLE : AttributeType.STRING;
+            schema.addAttribute(field[2], type);
+            xdataFieldAttributes[k] = schema.getAttributeIndex(field[2]);
+        }
+    }
+
+   /**
+    * Index the entity going from start (address of its 0 group) to end
+    * (address of the following entity), from which features of entities
+    * have been read from position first, and set their HANDLE attribute.
+    * The file pointer is unchanged.
+    */
+    void indexEntity(RandomAccessFile raf, long start, long end,
+                     FeatureCollection entities, int first) throws IOException {
+        int count = entities.size();
+        if (handleIndex == null || count == first || end <= start) return;
+        int length = (int)(end - start);
+        if (entityBuffer.length < length) entityBuffer = new byte[Math.max(length, 2 * entityBuffer.length)];
+        long position = raf.getFilePointer();
+        raf.seek(start);
+        raf.readFully(entityBuffer, 0, length);
+        raf.seek(position);
+        long handle = DxfHandleIndex.readHandle(entityBuffer, length);
+        if (handle == 0L) return;
+        CRC32 crc = new CRC32();
+        crc.update(entityBuffer, 0, length);
+        handleIndex.put(handle, first, start, crc.getValue());
+        String value = DxfHandleIndex.toString(handle);
+        List<Feature> list = entities.getFeatures();
+        for (int i = first ; i < count ; i++) {
+            list.get(i).setAttribute(handleAttribute, value);
+        }
+    }
+
+   /**
+    * Keep the raw XDATA of feature, going from start (address of its first
+    * 1001 group, or -1 if it has none) to end (address of the group
+    * following them), if XDATA are read. The file pointer is unchanged.
+    */
+    void readXData(RandomAccessFile raf, Feature feature, long start, long end)
+                                                            throws IOException {
+        addXData(feature, readXData(raf, start, end));
+    }
+
+   /**
+    * Return the raw XDATA going from start to end, or null if there is none
+    * or if XDATA are not read. The file pointer is unchanged.
+    * The result can be shared by several features (see
+    * {@link #addXData(Feature, DxfXData)}).
+    */
+    DxfXData readXData(RandomAccessFile raf, long start, long end) throws IOException {
+        if (!xdata || start < 0 || end <= start) return null;
+        int length = (int)(end - start);
+        byte[] chunk;
+        int offset;
+        if (length > XDATA_CHUNK / 4) {
+            chunk = new byte[length];
+            offset = 0;
+        }
+        else {
+            if (xdataChunkSize + length > xdataChunk.length) {
+                xdataChunk = new byte[XDATA_CHUNK];
+                xdataChunkSize = 0;
+            }
+            chunk = xdataChunk;
+            offset = xdataChunkSize;
+            xdataChunkSize += length;
+        }
+        long position = raf.getFilePointer();
+        raf.seek(start);
+        raf.readFully(chunk, offset, length);
+        raf.seek(position);
+        return new DxfXData(chunk, offset, length);
+    }
+
+   /**
+    * Set the XDATA of feature, and the attributes mapped to XDATA values
+    * (null if data is null), if XDATA are read.
+    */
+    void addXData(Feature feature, DxfXData data) {
+        if (xdataAttribute < 0) return;
+        feature.setAttribute(xdataAttribute, data);
+        Map<String,List<Object>> applications = null;
+        for (int k = 0 ; k < xdataFieldAttributes.length ; k++) {
+            int attribute = xdataFieldAttributes[k];
+            if (attribute < 0) continue;
+            Object value = null;
+            if (data != null) {
+                String[] field = xdataFields.get(k);
+                if (applications == null) applications = new HashMap<>();
+                List<Object> values = applications.get(field[0]);
+                if (values == null) {
+                    values = data.getValues(field[0]);
+                    applications.put(field[0], values);
+                }
+                try {
+                    int index = Integer.parseInt(field[1]);
+                    if (index >= 0 && index < values.size()) {
+                        value = xdataValue(values.get(index), schema.getAttributeType(attribute));
+                    }
+                } catch(NumberFormatException e) {
+                    // invalid index or value not matching the attribute type
+                }
+            }
+            feature.setAttribute(attribute, value);
+        }
+    }
+
+    // XDATA value converted to type
+    private static Object xdataValue(Object value, AttributeType type) {
+        if (type == AttributeType.INTEGER) {
+            return value instanceof Number ? ((Number)value).intValue() : Integer.valueOf(value.toString().trim());
+        }
+        if (type == AttributeType.DOUBLE) {
+            return value instanceof Number ? ((Number)value).doubleValue() : Double.valueOf(value.toString().trim());
+        }
+        return value.toString();
+    }
+
+   /**
+    * Return the block definition named name, or null if the file has no
+    * such block.
+    */
+    public DxfBLOCK getBlock(String name) {
+        return blocks == null || name == null ? null : blocks.getBlock(name);
+    }
+
     public static DxfFile createFromFile(File file) throws IOException {
-        RandomAccessFile raf = new RandomAccessFile(file, "r");
-        return createFromFile(raf);
+        return new DxfFile().load(file);
     }
 
     public static DxfFile createFromFile(RandomAccessFile raf) 
                                      throws NumberFormatException, IOException {
-        DxfFile dxfFile = new DxfFile();
+        return new DxfFile().load(raf);
+    }
+
+    public DxfFile load(File file) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        return load(raf);
+    }
+
+   /**
+    * Read the DXF file with the options set on this DxfFile.
+    */
+    public DxfFile load(RandomAccessFile raf)
+                                     throws NumberFormatException, IOException {
         initializeDXF_SCHEMA();
-        dxfFile.features = new FeatureDataset(DXF_SCHEMA);
+        createSchema();
+        features = new FeatureDataset(schema);
         DxfGroup group;
         try {
             while (null != (group = DxfGroup.readGroup(raf))) {
@@ -134,21 +458,20 @@ public class DxfFile {
                     //if (group == null) break; // never happens, readGroup throws Exception
                     if (DxfFile.DEBUG) group.print(0);
                     if (group.equals(HEADER)) {
-                        dxfFile.header = DxfHEADER.readHeader(raf);
+                        header = DxfHEADER.readHeader(raf);
                     }
                     else if (group.equals(CLASSES)) {
-                        dxfFile.classes = DxfCLASSES.readClasses(raf);
+                        classes = DxfCLASSES.readClasses(raf);
                     }
                     else if (group.equals(TABLES)) {
-                        dxfFile.tables = DxfTABLES.readTables(raf);
+                        tables = DxfTABLES.readTables(raf);
                     }
                     else if (group.equals(BLOCKS)) {
-                        dxfFile.blocks = DxfBLOCKS.readEntities(raf);
-                        dxfFile.features.addAll(dxfFile.blocks.entities.getFeatures());
+                        blocks = DxfBLOCKS.readEntities(raf, this);
                     }
                     else if (group.equals(ENTITIES)) {
-                        dxfFile.entities = DxfENTITIES.readEntities(raf);
-                        dxfFile.features.addAll(dxfFile.entities.entities.getFeatures());
+                        entities = DxfENTITIES.readEntities(raf, this);
+                        features.addAll(entities.entities.getFeatures());
                     }
                     else if (group.equals(OBJECTS)) {
                         //objects = DxfOBJECTS.readObjects(br);
@@ -173,7 +496,9 @@ public class DxfFile {
         } finally {
             raf.close();   
         }
-        return dxfFile;
+        entityBuffer = new byte[0];
+        if (handleIndex != null) handleIndex.setFeatures(features.getFeatures());
+        return this;
     }
 
     public FeatureCollection read(GeometryFactory gf) {
@@ -184,127 +509,374 @@ public class DxfFile {
         return null;
     }
 
+    // Number of features formatted by a worker thread in one batch
+    private static final int BATCH_SIZE = 1024;
+
     public static void write(FeatureCollection features, String[] layerNames,
-                             FileWriter fw, int precision, boolean suffix) {
+                             Writer writer, int precision, boolean suffix) {
+        write(features, layerNames, writer, precision, suffix, 1);
+    }
 
-        Envelope envelope = features.getEnvelope();
+   /**
+    * Write features to writer (and close it), with coordinates snapped to
+    * precision decimals.
+    * If threads is greater than 1, entities are formatted by batches in a
+    * pool of threads, and written in their original order, so that the
+    * result is exactly the same as with a single thread.
+    * As in previous versions, an IOException is only printed.
+    */
+    public static void write(FeatureCollection features, String[] layerNames,
+                             Writer writer, int precision, boolean suffix,
+                             int threads) {
+        DxfOutput out = new DxfOutput(writer);
+        out.setPrecision(precision);
+        try {
+            write(features, layerNames, out, suffix, threads);
+        } catch(IOException ioe) {
+            ioe.printStackTrace();
+        }
+    }
+
+   /**
+    * Write features to out, using its export options, and close it.
+    */
+    public static void write(FeatureCollection features, String[] layerNames,
+                             DxfOutput out, boolean suffix, int threads) throws IOException {
+        String defaultLayer = layerNames.length > 0 ? layerNames[0] : "0";
+        write(Collections.singletonList(features), new String[]{defaultLayer},
+              layerNames, out, suffix, threads);
+    }
+
+   /**
+    * Write several feature collections (e.g. several OpenJUMP layers) to out
+    * in a single pass, and close it.
+    * Features of collections.get(i) without LAYER attribute are written in
+    * the DXF layer defaultLayers[i]. layerNames contains the names of all
+    * the layers declared in the LAYER table.
+    * Collections are written one after the other in the ENTITIES section,
+    * without being merged.
+    */
+    public static void write(List<FeatureCollection> collections, String[] defaultLayers,
+                             String[] layerNames, DxfOutput out, boolean suffix,
+                             int threads) throws IOException {
+
+        int size = 0;
+        for (FeatureCollection features : collections) {
+            size += features.size();
+        }
 
-        Date date = new Date(System.currentTimeMillis());
         try {
-            // COMMENTAIRES DU TRADUCTEUR
-            fw.write(DxfGroup.toString(999, features.size() + " features"));
-            fw.write(DxfGroup.toString(999, "TRANSLATED BY DXF Driver 0.9.0"));
-            fw.write(DxfGroup.toString(999, "DATE : " + date));
-            
-            // ECRITURE DU HEADER
-            fw.write(DxfGroup.toString(0, "SECTION"));
-            fw.write(DxfGroup.toString(2, "HEADER"));
-            fw.write(DxfGroup.toString(9, "$ACADVER"));
-                fw.write(DxfGroup.toString(1, "AC1009"));
-            fw.write(DxfGroup.toString(9, "$CECOLOR"));
-                fw.write(DxfGroup.toString(62, 256));
-            fw.write(DxfGroup.toString(9, "$CELTYPE"));
-                fw.write(DxfGroup.toString(6, "DUPLAN"));
-            fw.write(DxfGroup.toString(9, "$CLAYER"));
-                fw.write(DxfGroup.toString(8, "0"));   // corrected by L. Becker on 2006-11-08
-            fw.write(DxfGroup.toString(9, "$ELEVATION"));
-                fw.write(DxfGroup.toString(40, 0.0, 3));
-            fw.write(DxfGroup.toString(9, "$EXTMAX"));
-                fw.write(DxfGroup.toString(10, envelope.getMaxX(), 6));
-                fw.write(DxfGroup.toString(20, envelope.getMaxY(), 6));
-                //fw.write(DxfGroup.toString(30, envelope.getMaxX(), 6));
-            fw.write(DxfGroup.toString(9, "$EXTMIN"));
-                fw.write(DxfGroup.toString(10, envelope.getMinX(), 6));
-                fw.write(DxfGroup.toString(20, envelope.getMinY(), 6));
-                //fw.write(DxfGroup.toString(30, envelope.getMaxX(), 6));
-            fw.write(DxfGroup.toString(9, "$INSBASE"));
-                fw.write(DxfGroup.toString(10, 0.0, 1));
-                fw.write(DxfGroup.toString(20, 0.0, 1));
-                fw.write(DxfGroup.toString(30, 0.0, 1));
-            fw.write(DxfGroup.toString(9, "$LIMCHECK"));
-                fw.write(DxfGroup.toString(70, 1));
-            fw.write(DxfGroup.toString(9, "$LIMMAX"));
-                fw.write(DxfGroup.toString(10, envelope.getMaxX(), 6));
-                fw.write(DxfGroup.toString(20, envelope.getMaxY(), 6));
-            fw.write(DxfGroup.toString(9, "$LIMMIN"));
-                fw.write(DxfGroup.toString(10, envelope.getMinX(), 6));
-                fw.write(DxfGroup.toString(20, envelope.getMinY(), 6));
-            fw.write(DxfGroup.toString(9, "$LUNITS"));
-                fw.write(DxfGroup.toString(70, 2));
-            fw.write(DxfGroup.toString(9, "$LUPREC"));
-                fw.write(DxfGroup.toString(70, 2));
-            fw.write(DxfGroup.toString(0, "ENDSEC"));
-
-            // ECRITURE DES TABLES
-            fw.write(DxfGroup.toString(0, "SECTION"));
-            fw.write(DxfGroup.toString(2, "TABLES"));
-                fw.write(DxfGroup.toString(0, "TABLE"));
-                fw.write(DxfGroup.toString(2, "STYLE"));
-                fw.write(DxfGroup.toString(70, 1));
-                fw.write(DxfGroup.toString(0, "STYLE")); // added by L. Becker on 2006-11-08
+            // Entities are written first in a buffer, which is copied after
+            // the header
+            if (isHeaderDeferred(out)) {
+                try (DxfOutput entities = out.createBuffer()) {
+                    writeEntities(collections, defaultLayers, suffix, entities, threads);
+                    writeFile(out, size + " features", entities, layerNames, suffix);
+                }
+            }
+            // Extents are computed while entities are written, and patched in the
+            // header
+            else {
+                long[] reserved = writeStart(out, size + " features", null,
+                        layerNames, Collections.<String>emptySet(), suffix);
+                writeEntities(collections, defaultLayers, suffix, out, threads);
+                writeEnd(out, reserved);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+   /**
+    * Return true if the entities of out must be written before its header :
+    * the linetypes of a R2000 file are only known once its entities are
+    * written, and a Writer output can only patch its extents in memory.
+    */
+    static boolean isHeaderDeferred(DxfOutput out) {
+        return out.isR2000() || !out.isPatchable();
+    }
+
+   /**
+    * Write a whole DXF file whose entities have already been written into
+    * entities, a buffer created by out : header and tables declaring the
+    * extents and the linetypes of entities, then the entities.
+    * out is flushed, but not closed.
+    */
+    static void writeFile(DxfOutput out, String comment, DxfOutput entities,
+                          String[] layerNames, boolean suffix) throws IOException {
+        long[] reserved = writeStart(out, comment, entities.getExtents(),
+                layerNames, entities.getLinetypes(), suffix);
+        entities.writeTo(out);
+        writeEnd(out, reserved);
+    }
+
+   /**
+    * Write the beginning of a DXF file, up to the beginning of the ENTITIES
+    * section : header, tables (and classes and blocks of a R2000 file).
+    * If envelope is null, the extents are reserved, and computed from the
+    * entities written.
+    * linetypes are the LTYPE values of the entities, declared in the LTYPE
+    * table of a R2000 file (see {@link DxfOutput#getLinetypes()}).
+    * @return the positions of the fields to patch in {@link #writeEnd}
+    */
+    static long[] writeStart(DxfOutput out, String comment, Envelope envelope,
+                             String[] layerNames, Collection<String> linetypes,
+                             boolean suffix) throws IOException {
+        // 8 extents values and the handle seed
+        long[] reserved = new long[9];
+        Arrays.fill(reserved, -1L);
+        Date date = new Date(System.currentTimeMillis());
+        // COMMENTAIRES DU TRADUCTEUR
+        out.group(999, comment);
+        out.group(999, "TRANSLATED BY DXF Driver 0.9.0");
+        out.group(999, "DATE : " + date);
+        
+        // ECRITURE DU HEADER
+        out.group(0, "SECTION");
+        out.group(2, "HEADER");
+        out.group(9, "$ACADVER");
+            out.group(1, out.isAC1015() ? "AC1015" : "AC1009");
+        // Code page of non-ASCII strings, unless the encoding is chosen by
+        // the Writer of out
+        if (out.getCodePage() != null) {
+            out.group(9, "$DWGCODEPAGE");
+            out.group(3, out.getCodePage());
+        }
+        // The handle seed is only known after the entities are written
+        if (out.isR2000()) {
+            out.group(9, "$HANDSEED");
+            reserved[8] = out.reserve(5, DxfR2000.HANDSEED_WIDTH);
+        }
+        out.group(9, "$CECOLOR");
+            out.group(62, 256);
+        out.group(9, "$CELTYPE");
+            out.group(6, out.isR2000() ? "BYLAYER" : "DUPLAN");
+        out.group(9, "$CLAYER");
+            out.group(8, "0");   // corrected by L. Becker on 2006-11-08
+        out.group(9, "$ELEVATION");
+            out.group(40, 0.0, 3);
+        out.group(9, "$EXTMAX");
+            reserved[0] = extent(out, 10, envelope, 0);
+            reserved[1] = extent(out, 20, envelope, 1);
+            //out.group(30, envelope.getMaxX(), 6);
+        out.group(9, "$EXTMIN");
+            reserved[2] = extent(out, 10, envelope, 2);
+            reserved[3] = extent(out, 20, envelope, 3);
+            //out.group(30, envelope.getMaxX(), 6);
+        out.group(9, "$INSBASE");
+            out.group(10, 0.0, 1);
+            out.group(20, 0.0, 1);
+            out.group(30, 0.0, 1);
+        out.group(9, "$LIMCHECK");
+            out.group(70, 1);
+        out.group(9, "$LIMMAX");
+            reserved[4] = extent(out, 10, envelope, 0);
+            reserved[5] = extent(out, 20, envelope, 1);
+        out.group(9, "$LIMMIN");
+            reserved[6] = extent(out, 10, envelope, 2);
+            reserved[7] = extent(out, 20, envelope, 3);
+        out.group(9, "$LUNITS");
+            out.group(70, 2);
+        out.group(9, "$LUPREC");
+            out.group(70, 2);
+        out.group(0, "ENDSEC");
+
+        // ECRITURE DES TABLES
+        if (out.isR2000()) {
+            out.setHandleSeed(DxfR2000.FIRST_HANDLE);
+            DxfR2000.writeClasses(out);
+            DxfR2000.writeTables(out, layerNames, linetypes, suffix);
+            DxfR2000.writeBlocks(out);
+        }
+        else {
+            out.group(0, "SECTION");
+            out.group(2, "TABLES");
+                out.group(0, "TABLE");
+                out.group(2, "STYLE");
+                out.group(70, 1);
+                out.group(0, "STYLE"); // added by L. Becker on 2006-11-08
                     DxfTABLE_STYLE_ITEM style =
                         new DxfTABLE_STYLE_ITEM("STANDARD", 0, 0f, 1f, 0f, 0, 1.0f, "xxx.txt", "yyy.txt");
-                    fw.write(style.toString());
-                    fw.write(DxfGroup.toString(0, "ENDTAB"));
-                fw.write(DxfGroup.toString(0, "TABLE"));
-                fw.write(DxfGroup.toString(2, "LTYPE"));
-                fw.write(DxfGroup.toString(70, 1));
-                fw.write(DxfGroup.toString(0, "LTYPE")); // added by L. Becker on 2006-11-08
+                    out.write(style.toString());
+                    out.group(0, "ENDTAB");
+                out.group(0, "TABLE");
+                out.group(2, "LTYPE");
+                out.group(70, 1);
+                out.group(0, "LTYPE"); // added by L. Becker on 2006-11-08
                     DxfTABLE_LTYPE_ITEM ltype =
                         new DxfTABLE_LTYPE_ITEM("CONTINUE", 0, "", 65, 0f, new float[0]);
-                    fw.write(ltype.toString());
-                    fw.write(DxfGroup.toString(0, "ENDTAB"));
-                fw.write(DxfGroup.toString(0, "TABLE"));
-                fw.write(DxfGroup.toString(2, "LAYER"));
-                fw.write(DxfGroup.toString(70, 2));
+                    out.write(ltype.toString());
+                    out.group(0, "ENDTAB");
+                out.group(0, "TABLE");
+                out.group(2, "LAYER");
+                out.group(70, 2);
                 for (String layerName : layerNames) {
                     DxfTABLE_LAYER_ITEM dxfLayer =
                         new DxfTABLE_LAYER_ITEM(layerName, 0, 131, "CONTINUE");
-                    fw.write(DxfGroup.toString(0, "LAYER")); // added by L. Becker on 2006-11-08
-                    fw.write(dxfLayer.toString());
+                    out.group(0, "LAYER"); // added by L. Becker on 2006-11-08
+                    out.write(dxfLayer.toString());
                     if (suffix) {
                         dxfLayer = new DxfTABLE_LAYER_ITEM(layerName + "_",
                                                         0, 131, "CONTINUE");
-                        fw.write(DxfGroup.toString(0, "LAYER")); // added by L. Becker on 2006-11-08
-                        fw.write(dxfLayer.toString());
+                        out.group(0, "LAYER"); // added by L. Becker on 2006-11-08
+                        out.write(dxfLayer.toString());
                     }
                 }
-                fw.write(DxfGroup.toString(0, "ENDTAB"));
-                fw.write(DxfGroup.toString(0, "ENDSEC"));
-                
-                // ECRITURE DES FEATURES
-                fw.write(DxfGroup.toString(0, "SECTION"));
-                fw.write(DxfGroup.toString(2, "ENTITIES"));
-                for (Feature feature : features.getFeatures()) {
-                    // use the layer attribute for layer name
-                    String entity;
-                    if (feature.getSchema().hasAttribute("LAYER")) {
-                        entity = DxfENTITY.feature2Dxf(feature, feature.getString("LAYER"), suffix);
-                    }
-                    // use the JUMP layer name for DXF layer name
-                    else if (layerNames.length > 0) {
-                        entity = DxfENTITY.feature2Dxf(feature, layerNames[0], suffix);
-                    }
-                    else {
-                        entity = DxfENTITY.feature2Dxf(feature, "0", suffix);
-                    }
-                    if (entity != null) {
-                        fw.write(entity);
+                out.group(0, "ENDTAB");
+                out.group(0, "ENDSEC");
+        }
+
+        // ECRITURE DES FEATURES
+        out.group(0, "SECTION");
+        out.group(2, "ENTITIES");
+        return reserved;
+    }
+
+   /**
+    * Write the end of a DXF file started with {@link #writeStart}, and patch
+    * its reserved fields. out is flushed, but not closed.
+    */
+    static void writeEnd(DxfOutput out, long[] reserved) throws IOException {
+        out.group(0, "ENDSEC");
+
+        for (int i = 0 ; i < 8 ; i++) {
+            if (reserved[i] >= 0L) {
+                out.patch(reserved[i], reservedExtentValue(out.getExtents(), i % 4));
+            }
+        }
+
+        if (out.isR2000()) {
+            DxfR2000.writeObjects(out);
+            out.patch(reserved[8], DxfR2000.handseed(out.getHandleSeed()));
+        }
+
+        // FIN DE FICHIER
+        out.group(0, "EOF");
+        out.flush();
+    }
+
+    // Width of the extents values reserved in the header
+    private static final int EXTENT_WIDTH = 24;
+
+    // Write the extent value i (maxx, maxy, minx or miny) of envelope, or
+    // reserve it if envelope is null
+    private static long extent(DxfOutput out, int code, Envelope envelope,
+                               int i) throws IOException {
+        if (envelope == null) return out.reserve(code, EXTENT_WIDTH);
+        out.group(code, extentValue(envelope, i), 6);
+        return -1L;
+    }
+
+    private static double extentValue(Envelope envelope, int i) {
+        return i == 0 ? envelope.getMaxX() :
+               i == 1 ? envelope.getMaxY() :
+               i == 2 ? envelope.getMinX() : envelope.getMinY();
+    }
+
+    // Format the extent value i right-aligned on EXTENT_WIDTH chars, with 6
+    // decimals (less for huge values which would not fit)
+    private static String reservedExtentValue(Envelope envelope, int i) {
+        double value = extentValue(envelope, i);
+        String s = DxfNumberFormat.format(value, 6);
+        for (int d = 5 ; d >= 0 && s.length() > EXTENT_WIDTH ; d--) {
+            s = DxfNumberFormat.format(value, d);
+        }
+        if (s.length() > EXTENT_WIDTH) s = Double.toString(value);
+        StringBuilder sb = new StringBuilder(EXTENT_WIDTH);
+        for (int k = s.length() ; k < EXTENT_WIDTH ; k++) sb.append(' ');
+        return sb.append(s).toString();
+    }
+
+    private static void writeEntities(List<Feature> features, DxfAttributePlan plan,
+                                      String defaultLayer, boolean suffix,
+                                      DxfOutput out) throws IOException {
+        for (Feature feature : features) {
+            writeEntity(feature, plan, defaultLayer, suffix, out);
+        }
+    }
+
+   /**
+    * Write feature in the ENTITIES section of out, in the layer given by its
+    * LAYER attribute, or in defaultLayer. plan is the attribute plan of the
+    * collection of feature.
+    */
+    static void writeEntity(Feature feature, DxfAttributePlan plan, String defaultLayer,
+                            boolean suffix, DxfOutput out) throws IOException {
+        out.expandExtents(feature.getGeometry().getEnvelopeInternal());
+        plan = plan.of(feature);
+        // use the layer attribute for layer name
+        if (plan.layer >= 0) {
+            DxfENTITY.feature2Dxf(feature, plan, feature.getString(plan.layer), suffix, out);
+        }
+        // use the JUMP layer name for DXF layer name
+        else {
+            DxfENTITY.feature2Dxf(feature, plan, defaultLayer, suffix, out);
+        }
+    }
+
+    // With several threads, batches are formatted into in-memory outputs by
+    // the pool, and the calling thread copies them in order as soon as they
+    // are ready.
+    // The number of pending batches is limited to keep memory bounded.
+    // Batches of successive collections share the same pipeline.
+    private static void writeEntities(List<FeatureCollection> collections, String[] defaultLayers,
+                                      final boolean suffix, DxfOutput out, int threads) throws IOException {
+        if (threads <= 1) {
+            for (int i = 0 ; i < collections.size() ; i++) {
+                FeatureCollection features = collections.get(i);
+                writeEntities(features.getFeatures(), DxfAttributePlan.get(features.getFeatureSchema()),
+                              defaultLayers[i], suffix, out);
+            }
+            return;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        Queue<Future<DxfOutput>> pending = new ArrayDeque<>();
+        try {
+            for (int i = 0 ; i < collections.size() ; i++) {
+                final List<Feature> features = collections.get(i).getFeatures();
+                final DxfAttributePlan plan = DxfAttributePlan.get(collections.get(i).getFeatureSchema());
+                final String defaultLayer = defaultLayers[i];
+                for (int start = 0 ; start < features.size() ; start += BATCH_SIZE) {
+                    final List<Feature> batch =
+                            features.subList(start, Math.min(start + BATCH_SIZE, features.size()));
+                    final DxfOutput batchOut = out.createBuffer();
+                    pending.add(executor.submit(new Callable<DxfOutput>() {
+                        public DxfOutput call() throws IOException {
+                            writeEntities(batch, plan, defaultLayer, suffix, batchOut);
+                            return batchOut;
+                        }
+                    }));
+                    if (pending.size() > 2 * threads) {
+                        writeBatch(pending.remove(), out);
                     }
                 }
-                fw.write(DxfGroup.toString(0, "ENDSEC"));
-                
-            // FIN DE FICHIER
-            fw.write(DxfGroup.toString(0, "EOF"));
-            fw.flush();
-        } catch(IOException ioe) {
-            ioe.printStackTrace();
-        } finally {
-            if (null != fw) {
-                try {
-                    fw.close();
-                } catch(IOException ignored){}
             }
+            while (!pending.isEmpty()) {
+                writeBatch(pending.remove(), out);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static void writeBatch(Future<DxfOutput> batch, DxfOutput out) throws IOException {
+        try (DxfOutput batchOut = getResult(batch)) {
+            batchOut.writeTo(out);
+        }
+    }
+
+    static <T> T getResult(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("DXF export interrupted");
+        } catch(ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException)cause;
+            if (cause instanceof RuntimeException) throw (RuntimeException)cause;
+            if (cause instanceof Error) throw (Error)cause;
+            throw new IOException(cause);
         }
     }
 
@@ -26,9 +26,6 @@ package fr.michaelm.jump.drivers.dxf;
 
 import java.io.RandomAccessFile;
 import java.io.IOException;
-import java.text.DecimalFormat;
-import java.text.DecimalFormatSymbols;
-import java.util.Locale;
 
 /**
  * DxfGroup is a group containing a dxf code and a dxf value.
@@ -37,24 +34,6 @@ import java.util.Locale;
  */
 public class DxfGroup {
 
-    // Write international decimal symbol (.), not the french one (,)
-    private static final DecimalFormatSymbols dfs = new DecimalFormatSymbols(Locale.US);
-
-    private static final DecimalFormat[] decimalFormats = new DecimalFormat[]{
-        new DecimalFormat("#0", dfs),
-        new DecimalFormat("#0.0", dfs),
-        new DecimalFormat("#0.00", dfs),
-        new DecimalFormat("#0.000", dfs),
-        new DecimalFormat("#0.0000", dfs),
-        new DecimalFormat("#0.00000", dfs),
-        new DecimalFormat("#0.000000", dfs),
-        new DecimalFormat("#0.0000000", dfs),
-        new DecimalFormat("#0.00000000", dfs),
-        new DecimalFormat("#0.000000000", dfs),
-        new DecimalFormat("#0.0000000000", dfs),
-        new DecimalFormat("#0.00000000000", dfs),
-        new DecimalFormat("#0.000000000000", dfs)};
-
     private int code = -1;
     private String value;
     private long address;
@@ -131,12 +110,12 @@ public class DxfGroup {
 
     public static String toString(int code, float value, int decimalPartLength) {
         return int34car(code) + "\r\n" +
-              decimalFormats[decimalPartLength].format(value) + "\r\n";
+              DxfNumberFormat.format(value, decimalPartLength) + "\r\n";
     }
 
     public static String toString(int code, double value, int decimalPartLength) {
         return int34car(code) + "\r\n" +
-              decimalFormats[decimalPartLength].format(value) + "\r\n";
+              DxfNumberFormat.format(value, decimalPartLength) + "\r\n";
     }
 
     public static String toString(int code, Object value) {
@@ -0,0 +1,340 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.algorithm.Area;
+import org.locationtech.jts.algorithm.locate.IndexedPointInAreaLocator;
+import org.locationtech.jts.algorithm.locate.PointOnGeometryLocator;
+import org.locationtech.jts.geom.*;
+import org.locationtech.jts.index.strtree.STRtree;
+
+/**
+ * HATCH DXF entity.
+ * This class has a static method reading the boundary paths of a DXF HATCH
+ * and adding a feature with a Polygon or a MultiPolygon geometry to a
+ * FeatureCollection. Boundary paths may be polylines (with bulges) or loops
+ * of lines, circular arcs, elliptic arcs and splines.
+ * The first ring containing a boundary path is found with a spatial index.
+ * Paths nested in an even number of paths are shells, the other ones are
+ * holes of the path containing them.
+ * @author Michaël Michaud
+ */
+public class DxfHATCH extends DxfENTITY {
+
+    public DxfHATCH() {super("DEFAULT");}
+
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, FeatureCollection entities)
+                                                            throws IOException {
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
+        feature.setAttribute("LTYPE", "BYLAYER");
+        feature.setAttribute("THICKNESS", 0.0);
+        feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
+        GeometryFactory gf = dxfFile.getGeometryFactory();
+        double z = Double.NaN;
+        boolean pathsRead = false;
+        List<LinearRing> rings = new ArrayList<>();
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
+        DxfGroup group;
+        while (null != (group = DxfGroup.readGroup(raf))) {
+            int code = group.getCode();
+            if (code==0) break;
+            if (DxfFile.DEBUG) group.print(12);
+            if (code==8) feature.setAttribute("LAYER", group.getValue());
+            else if (code==6) feature.setAttribute("LTYPE", group.getValue());
+            else if (code==62) feature.setAttribute("COLOR", group.getIntValue());
+            // elevation point, before boundary paths (seed points use the
+            // same codes after them)
+            else if (code==30 && !pathsRead) z = group.getDoubleValue();
+            else if (code==91 && !pathsRead) {
+                pathsRead = true;
+                int count = group.getIntValue();
+                for (int i = 0 ; i < count ; i++) {
+                    CoordinateList coordList = readPath(raf, dxfFile, z);
+                    if (coordList == null) break;
+                    if (coordList.size() > 3) {
+                        rings.add(gf.createLinearRing(coordList.toCoordinateArray()));
+                    }
+                }
+            }
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
+            //else {}
+        }
+        Geometry geometry = buildPolygons(rings, gf);
+        if (geometry != null) {
+            feature.setGeometry(geometry);
+            if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
+            entities.add(feature);
+        }
+        return group;
+    }
+
+   /**
+    * Read a boundary path and return it as a closed CoordinateList, or null
+    * if the groups read do not describe a boundary path.
+    */
+    private static CoordinateList readPath(RandomAccessFile raf, DxfFile dxfFile, double z)
+                                                            throws IOException {
+        DxfGroup group = read(raf, 92);
+        if (group == null) return null;
+        int type = group.getIntValue();
+        DxfArcTessellator tessellator = dxfFile.getArcTessellator();
+        CoordinateList coordList = new CoordinateList();
+        if ((type & 2) == 2) {
+            // polyline path, always closed
+            boolean hasBulge = readInt(raf, 72) == 1;
+            readInt(raf, 73);
+            int count = readInt(raf, 93);
+            double bulge = 0.0;
+            for (int i = 0 ; i < count ; i++) {
+                double x = readDouble(raf, 10);
+                double y = readDouble(raf, 20);
+                if (Double.isNaN(x) || Double.isNaN(y)) return null;
+                tessellator.addBulge(coordList, x, y, z, bulge);
+                coordList.add(new Coordinate(x, y, z), false);
+                bulge = hasBulge ? readDouble(raf, 42) : 0.0;
+            }
+            if (!coordList.isEmpty()) {
+                Coordinate first = coordList.getCoordinate(0);
+                tessellator.addBulge(coordList, first.x, first.y, z, bulge);
+            }
+        }
+        else {
+            int count = readInt(raf, 93);
+            for (int i = 0 ; i < count ; i++) {
+                if (!readEdge(raf, dxfFile, readInt(raf, 72), z, coordList)) return null;
+            }
+        }
+        // skip source boundary objects
+        while ((group = DxfGroup.readGroup(raf)).getCode() == 97 || group.getCode() == 330);
+        raf.seek(group.getAddress());
+        coordList.closeRing();
+        return coordList;
+    }
+
+   /**
+    * Read an edge of type type (1 = line, 2 = circular arc, 3 = elliptic
+    * arc, 4 = spline) and add its points to coordList.
+    * @return false if the groups read do not describe an edge
+    */
+    private static boolean readEdge(RandomAccessFile raf, DxfFile dxfFile, int type,
+                                    double z, CoordinateList coordList)
+                                                            throws IOException {
+        if (type == 1) {
+            double x0 = readDouble(raf, 10), y0 = readDouble(raf, 20);
+            double x1 = readDouble(raf, 11), y1 = readDouble(raf, 21);
+            if (Double.isNaN(x0 + y0 + x1 + y1)) return false;
+            coordList.add(new Coordinate(x0, y0, z), false);
+            coordList.add(new Coordinate(x1, y1, z), false);
+        }
+        else if (type == 2) {
+            double x = readDouble(raf, 10), y = readDouble(raf, 20);
+            double radius = readDouble(raf, 40);
+            double start = readDouble(raf, 50), end = readDouble(raf, 51);
+            boolean ccw = readInt(raf, 73) != 0;
+            if (Double.isNaN(x + y + radius + start + end)) return false;
+            // angles of clockwise arcs are stored negated
+            double sweep = Math.toRadians(sweep(start, end));
+            start = Math.toRadians(start);
+            coordList.add(dxfFile.getArcTessellator().arc(x, y, z, radius,
+                    ccw ? start : -start, ccw ? sweep : -sweep), false);
+        }
+        else if (type == 3) {
+            double x = readDouble(raf, 10), y = readDouble(raf, 20);
+            double mx = readDouble(raf, 11), my = readDouble(raf, 21);
+            double ratio = readDouble(raf, 40);
+            double start = readDouble(raf, 50), end = readDouble(raf, 51);
+            boolean ccw = readInt(raf, 73) != 0;
+            if (Double.isNaN(x + y + mx + my + ratio + start + end)) return false;
+            double sweep = Math.toRadians(sweep(start, end));
+            start = Math.toRadians(start);
+            coordList.add(dxfFile.getArcTessellator().ellipse(x, y, z,
+                    mx, my, -ratio * my, ratio * mx,
+                    ccw ? start : -start, ccw ? sweep : -sweep, Math.hypot(mx, my)), false);
+        }
+        else if (type == 4) {
+            int degree = readInt(raf, 94);
+            boolean rational = readInt(raf, 73) == 1;
+            readInt(raf, 74);
+            int knotCount = Math.max(0, readInt(raf, 95));
+            int size = Math.max(0, readInt(raf, 96));
+            double[] knots = new double[knotCount];
+            for (int i = 0 ; i < knotCount ; i++) knots[i] = readDouble(raf, 40);
+            double[] x = new double[size], y = new double[size], zs = new double[size];
+            double[] weights = new double[size];
+            Arrays.fill(zs, z);
+            for (int i = 0 ; i < size ; i++) {
+                x[i] = readDouble(raf, 10);
+                y[i] = readDouble(raf, 20);
+                weights[i] = rational ? readDouble(raf, 42) : 1.0;
+                if (Double.isNaN(x[i] + y[i])) return false;
+            }
+            // fit data (R2010), not used when control points are defined.
+            // A 97 group not followed by fit points is the number of source
+            // boundary objects of the path
+            DxfGroup group = read(raf, 97);
+            if (group != null && group.getIntValue() > 0) {
+                DxfGroup next = read(raf, 11);
+                if (next == null) raf.seek(group.getAddress());
+                else {
+                    raf.seek(next.getAddress());
+                    for (int i = 0 ; i < group.getIntValue() ; i++) {
+                        readDouble(raf, 11);
+                        readDouble(raf, 21);
+                    }
+                    while ((next = DxfGroup.readGroup(raf)).getCode() == 12 || next.getCode() == 22 ||
+                            next.getCode() == 13 || next.getCode() == 23);
+                    raf.seek(next.getAddress());
+                }
+            }
+            Coordinate[] coords = dxfFile.getSplineEvaluator().flatten(degree, size,
+                    x, y, zs, weights, size, knots, knotCount);
+            if (coords != null) coordList.add(coords, false);
+        }
+        else return false;
+        return true;
+    }
+
+    // Sweep in ]0, 360] from start to end angles in degrees
+    private static double sweep(double start, double end) {
+        double sweep = (end - start) % 360.0;
+        return sweep <= 0.0 ? sweep + 360.0 : sweep;
+    }
+
+   /**
+    * Read the next group if its code is code. Otherwise, return null and
+    * leave the file pointer unchanged.
+    */
+    private static DxfGroup read(RandomAccessFile raf, int code) throws IOException {
+        DxfGroup group = DxfGroup.readGroup(raf);
+        if (group.getCode() == code) return group;
+        raf.seek(group.getAddress());
+        return null;
+    }
+
+    private static double readDouble(RandomAccessFile raf, int code) throws IOException {
+        DxfGroup group = read(raf, code);
+        return group == null ? Double.NaN : group.getDoubleValue();
+    }
+
+    private static int readInt(RandomAccessFile raf, int code) throws IOException {
+        DxfGroup group = read(raf, code);
+        return group == null ? -1 : group.getIntValue();
+    }
+
+   /**
+    * Build polygons from boundary rings : a ring inside an even number of
+    * rings is a shell, and a ring inside an odd number of rings is a hole of
+    * the smallest ring containing it.
+    * @return a Polygon, a MultiPolygon or null if rings is empty
+    */
+    static Geometry buildPolygons(List<LinearRing> rings, GeometryFactory gf) {
+        int n = rings.size();
+        if (n == 0) return null;
+        // rings sorted by decreasing area, so that a ring can only be
+        // contained by a previous one
+        final double[] areas = new double[n];
+        Integer[] order = new Integer[n];
+        for (int i = 0 ; i < n ; i++) {
+            areas[i] = Area.ofRing(rings.get(i).getCoordinateSequence());
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(areas[b], areas[a]));
+        LinearRing[] sorted = new LinearRing[n];
+        STRtree index = new STRtree();
+        for (int i = 0 ; i < n ; i++) {
+            sorted[i] = rings.get(order[i]);
+            index.insert(sorted[i].getEnvelopeInternal(), i);
+        }
+        PointOnGeometryLocator[] locators = new PointOnGeometryLocator[n];
+        int[] parent = new int[n];
+        int[] depth = new int[n];
+        List<List<LinearRing>> holes = new ArrayList<>(n);
+        for (int i = 0 ; i < n ; i++) {
+            holes.add(null);
+            Envelope env = sorted[i].getEnvelopeInternal();
+            List<?> candidates = index.query(env);
+            int[] previous = new int[candidates.size()];
+            int count = 0;
+            for (Object candidate : candidates) {
+                int j = (Integer)candidate;
+                if (j < i && sorted[j].getEnvelopeInternal().covers(env)) previous[count++] = j;
+            }
+            // the smallest containing ring is the last one in sorted order
+            Arrays.sort(previous, 0, count);
+            parent[i] = -1;
+            for (int k = count - 1 ; k >= 0 ; k--) {
+                int j = previous[k];
+                if (locators[j] == null) {
+                    locators[j] = new IndexedPointInAreaLocator(gf.createPolygon(sorted[j]));
+                }
+                if (isInside(sorted[i], locators[j])) {
+                    parent[i] = j;
+                    break;
+                }
+            }
+            depth[i] = parent[i] < 0 ? 0 : depth[parent[i]] + 1;
+            if (depth[i] % 2 == 1) {
+                if (holes.get(parent[i]) == null) holes.set(parent[i], new ArrayList<>());
+                holes.get(parent[i]).add(sorted[i]);
+            }
+        }
+        List<Polygon> polygons = new ArrayList<>();
+        for (int i = 0 ; i < n ; i++) {
+            if (depth[i] % 2 == 1) continue;
+            List<LinearRing> shellHoles = holes.get(i);
+            polygons.add(gf.createPolygon(sorted[i], shellHoles == null ?
+                    null : shellHoles.toArray(new LinearRing[0])));
+        }
+        if (polygons.size() == 1) return polygons.get(0);
+        return gf.createMultiPolygon(polygons.toArray(new Polygon[0]));
+    }
+
+    // ring is inside the area of locator if one of its vertices is in the
+    // interior (rings are not supposed to cross each other)
+    private static boolean isInside(LinearRing ring, PointOnGeometryLocator locator) {
+        CoordinateSequence seq = ring.getCoordinateSequence();
+        Coordinate coord = new Coordinate();
+        for (int i = 0 ; i < seq.size() ; i++) {
+            seq.getCoordinate(i, coord);
+            int location = locator.locate(coord);
+            if (location == Location.INTERIOR) return true;
+            if (location == Location.EXTERIOR) return false;
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,245 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.vividsolutions.jump.feature.Feature;
+
+/**
+ * Index of the entities of a DXF file by handle (group 5).
+ * For each handle, the index keeps the position of the first feature read
+ * from the entity, the address of the entity in the file and a checksum of
+ * its groups, in primitive arrays of an open addressing hash table.
+ * Checksums make it possible to find entities changed between two versions
+ * of a file without comparing their geometries.
+ * @author Michaël Michaud
+ */
+public class DxfHandleIndex {
+
+    // 0 is not a valid handle and marks empty slots
+    private long[] handles = new long[1024];
+    private int[] positions = new int[1024];
+    private long[] offsets = new long[1024];
+    private long[] checksums = new long[1024];
+    private int size;
+
+    private List<Feature> features = Collections.emptyList();
+
+    public DxfHandleIndex() {}
+
+    public int size() {
+        return size;
+    }
+
+   /**
+    * Add the entity of handle handle, read at offset in the file, whose
+    * first feature is at position in the features.
+    */
+    public void put(long handle, int position, long offset, long checksum) {
+        if (handle == 0L) return;
+        if (2 * (size + 1) > handles.length) grow();
+        int slot = slot(handles, handle);
+        if (handles[slot] == 0L) size++;
+        handles[slot] = handle;
+        positions[slot] = position;
+        offsets[slot] = offset;
+        checksums[slot] = checksum;
+    }
+
+   /**
+    * Set the features positions refer to.
+    */
+    void setFeatures(List<Feature> features) {
+        this.features = features;
+    }
+
+    public boolean contains(long handle) {
+        return handle != 0L && handles[slot(handles, handle)] == handle;
+    }
+
+   /**
+    * Return the first feature read from the entity of handle handle, or null.
+    */
+    public Feature getFeature(long handle) {
+        int position = getPosition(handle);
+        return position < 0 || position >= features.size() ? null : features.get(position);
+    }
+
+   /**
+    * Return the first feature read from the entity of handle handle (an
+    * hexadecimal string), or null.
+    */
+    public Feature getFeature(String handle) {
+        return getFeature(parseHandle(handle));
+    }
+
+   /**
+    * Return the position of the first feature read from the entity of
+    * handle handle, or -1.
+    */
+    public int getPosition(long handle) {
+        if (handle == 0L) return -1;
+        int slot = slot(handles, handle);
+        return handles[slot] == handle ? positions[slot] : -1;
+    }
+
+   /**
+    * Return the address of the entity of handle handle in the file, or -1.
+    */
+    public long getOffset(long handle) {
+        if (handle == 0L) return -1L;
+        int slot = slot(handles, handle);
+        return handles[slot] == handle ? offsets[slot] : -1L;
+    }
+
+   /**
+    * Return the checksum of the groups of the entity of handle handle, or -1.
+    */
+    public long getChecksum(long handle) {
+        if (handle == 0L) return -1L;
+        int slot = slot(handles, handle);
+        return handles[slot] == handle ? checksums[slot] : -1L;
+    }
+
+   /**
+    * Return the handles of this index which are not in previous, or whose
+    * entity has changed since previous (sorted). previous.getChangedHandles(this)
+    * returns the handles of entities which have been removed or changed.
+    */
+    public long[] getChangedHandles(DxfHandleIndex previous) {
+        long[] changed = new long[size];
+        int count = 0;
+        for (int slot = 0 ; slot < handles.length ; slot++) {
+            long handle = handles[slot];
+            if (handle != 0L && previous.getChecksum(handle) != checksums[slot]) {
+                changed[count++] = handle;
+            }
+        }
+        changed = Arrays.copyOf(changed, count);
+        Arrays.sort(changed);
+        return changed;
+    }
+
+   /**
+    * Parse an hexadecimal handle, returning 0 if handle is not valid.
+    */
+    public static long parseHandle(String handle) {
+        if (handle == null) return 0L;
+        try {
+            return Long.parseUnsignedLong(handle.trim(), 16);
+        } catch(NumberFormatException e) {
+            return 0L;
+        }
+    }
+
+    public static String toString(long handle) {
+        return Long.toHexString(handle).toUpperCase();
+    }
+
+   /**
+    * Return the handle (group 5) of the entity whose groups are in the
+    * length first bytes of bytes, starting with its 0 group, or 0 if it has
+    * no handle. Following entities (VERTEX...) are not searched.
+    */
+    static long readHandle(byte[] bytes, int length) {
+        int position = 0;
+        boolean first = true;
+        while (position < length) {
+            // code line
+            int start = position;
+            while (position < length && bytes[position] != '\n') position++;
+            int code = parseCode(bytes, start, position);
+            position++;
+            // value line
+            start = position;
+            while (position < length && bytes[position] != '\n') position++;
+            int end = position;
+            position++;
+            if (end > start && bytes[end - 1] == '\r') end--;
+            if (code == 0 && !first) return 0L;
+            first = false;
+            if (code == 5) {
+                long handle = 0L;
+                for (int i = start ; i < end ; i++) {
+                    int digit = Character.digit((char)bytes[i], 16);
+                    if (digit < 0) {
+                        if (bytes[i] == ' ') continue;
+                        return 0L;
+                    }
+                    handle = (handle << 4) | digit;
+                }
+                return handle;
+            }
+        }
+        return 0L;
+    }
+
+    private static int parseCode(byte[] bytes, int start, int end) {
+        int code = 0;
+        boolean digits = false;
+        for (int i = start ; i < end ; i++) {
+            byte b = bytes[i];
+            if (b >= '0' && b <= '9') {
+                code = 10 * code + (b - '0');
+                digits = true;
+            }
+            else if (b != ' ' && b != '\r') return -1;
+        }
+        return digits ? code : -1;
+    }
+
+    private static int slot(long[] handles, long handle) {
+        int mask = handles.length - 1;
+        // handles are often consecutive : spread them over the table
+        int slot = (int)((handle * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while (handles[slot] != 0L && handles[slot] != handle) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void grow() {
+        long[] oldHandles = handles;
+        int[] oldPositions = positions;
+        long[] oldOffsets = offsets;
+        long[] oldChecksums = checksums;
+        int length = 2 * oldHandles.length;
+        handles = new long[length];
+        positions = new int[length];
+        offsets = new long[length];
+        checksums = new long[length];
+        for (int i = 0 ; i < oldHandles.length ; i++) {
+            if (oldHandles[i] == 0L) continue;
+            int slot = slot(handles, oldHandles[i]);
+            handles[slot] = oldHandles[i];
+            positions[slot] = oldPositions[i];
+            offsets[slot] = oldOffsets[i];
+            checksums[slot] = oldChecksums[i];
+        }
+    }
+
+}
@@ -0,0 +1,218 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.util.AffineTransformation;
+
+/**
+ * INSERT DXF entity.
+ * An INSERT is expanded into the features of the block it references, moved
+ * to the insertion point, scaled and rotated (and repeated if the INSERT
+ * has several rows or columns).
+ * Block entities of layer 0, and BYBLOCK color and line type, take the
+ * properties of the INSERT.
+ * If the DxfFile reads INSERTs as instances, each INSERT cell becomes a
+ * single {@link DxfInsertFeature} sharing the geometry of the block.
+ * The XDATA of the INSERT are given to every feature it is expanded into,
+ * or to every instance.
+ * @author Michaël Michaud
+ */
+public class DxfINSERT extends DxfENTITY {
+
+    private String blockName = null;
+    private String layer = "0";
+    private String ltype = null;
+    private Integer color = null;
+    private double x = 0.0, y = 0.0;
+    private double xScale = 1.0, yScale = 1.0;
+    private double rotation = 0.0;
+    private int columns = 1, rows = 1;
+    private double columnSpacing = 0.0, rowSpacing = 0.0;
+    // Address of the first 1001 group, or -1 if the INSERT has no XDATA
+    private long xdata = -1L;
+
+    public DxfINSERT() {super("DEFAULT");}
+
+   /**
+    * Read an INSERT and add the features of the block it references to
+    * entities.
+    */
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile,
+                                      FeatureCollection entities) throws IOException {
+        DxfINSERT insert = new DxfINSERT();
+        DxfGroup group = insert.read(raf);
+        int first = entities.size();
+        if (dxfFile.isInsertInstances()) {
+            insert.instantiate(dxfFile, entities);
+        }
+        else {
+            List<Feature> features = new ArrayList<>();
+            insert.expand(dxfFile, null, features);
+            entities.addAll(features);
+        }
+        // XDATA are read once, and shared by all the features
+        if (entities.size() > first) {
+            DxfXData data = dxfFile.readXData(raf, insert.xdata, group.getAddress());
+            List<Feature> features = entities.getFeatures();
+            for (int i = first ; i < features.size() ; i++) {
+                dxfFile.addXData(features.get(i), data);
+            }
+        }
+        return group;
+    }
+
+   /**
+    * Read the groups of this INSERT and return the next entity group.
+    */
+    public DxfGroup read(RandomAccessFile raf) throws IOException {
+        DxfGroup group;
+        while (null != (group = DxfGroup.readGroup(raf))) {
+            int code = group.getCode();
+            if (code == 0) break;
+            if (DxfFile.DEBUG) group.print(12);
+            if (code==2) blockName = group.getValue();
+            else if (code==8) layer = group.getValue();
+            else if (code==6) ltype = group.getValue();
+            else if (code==62) color = group.getIntValue();
+            else if (code==10) x = group.getDoubleValue();
+            else if (code==20) y = group.getDoubleValue();
+            else if (code==41) xScale = group.getDoubleValue();
+            else if (code==42) yScale = group.getDoubleValue();
+            else if (code==50) rotation = group.getDoubleValue();
+            else if (code==70) columns = Math.max(1, group.getIntValue());
+            else if (code==71) rows = Math.max(1, group.getIntValue());
+            else if (code==44) columnSpacing = group.getDoubleValue();
+            else if (code==45) rowSpacing = group.getDoubleValue();
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
+            //else {}
+        }
+        return group;
+    }
+
+    public String getBlockName() {
+        return blockName;
+    }
+
+   /**
+    * Return the transformation from block coordinates (relative to the base
+    * point) to the coordinates of the cell column, row of this INSERT.
+    */
+    public AffineTransformation getTransformation(int column, int row) {
+        AffineTransformation transformation = AffineTransformation.scaleInstance(xScale, yScale);
+        transformation.translate(column * columnSpacing, row * rowSpacing);
+        // exact sine and cosine for right angles
+        double angle = rotation % 360.0;
+        if (angle % 90.0 == 0.0) {
+            int quadrant = (int)((angle < 0.0 ? angle + 360.0 : angle) / 90.0);
+            transformation.rotate(quadrant == 1 ? 1.0 : quadrant == 3 ? -1.0 : 0.0,
+                                  quadrant == 0 ? 1.0 : quadrant == 2 ? -1.0 : 0.0);
+        }
+        else transformation.rotate(Math.toRadians(rotation));
+        transformation.translate(x, y);
+        return transformation;
+    }
+
+   /**
+    * Add the features of the referenced block, transformed by the
+    * transformation of this INSERT and then by next (if not null), to
+    * features.
+    * Unknown blocks are ignored.
+    */
+    void expand(DxfFile dxfFile, AffineTransformation next, List<Feature> features) {
+        DxfBLOCK block = dxfFile.getBlock(blockName);
+        if (block == null) return;
+        List<Feature> blockFeatures = block.getFeatures(dxfFile);
+        if (blockFeatures.isEmpty()) return;
+        for (int row = 0 ; row < rows ; row++) {
+            for (int column = 0 ; column < columns ; column++) {
+                AffineTransformation transformation = getTransformation(column, row);
+                if (next != null) transformation.compose(next);
+                for (Feature blockFeature : blockFeatures) {
+                    features.add(instance(blockFeature, transformation));
+                }
+            }
+        }
+    }
+
+   /**
+    * Add one DxfInsertFeature per cell of this INSERT to entities.
+    * Unknown or empty blocks are ignored.
+    */
+    void instantiate(DxfFile dxfFile, FeatureCollection entities) {
+        DxfBLOCK block = dxfFile.getBlock(blockName);
+        if (block == null) return;
+        Geometry blockGeometry = block.getGeometry(dxfFile);
+        if (blockGeometry.isEmpty()) return;
+        for (int row = 0 ; row < rows ; row++) {
+            for (int column = 0 ; column < columns ; column++) {
+                Feature feature = new DxfInsertFeature(entities.getFeatureSchema(),
+                        this, blockGeometry, column, row);
+                feature.setAttribute("LAYER", layer);
+                feature.setAttribute("LTYPE", ltype == null ? "BYLAYER" : ltype);
+                feature.setAttribute("THICKNESS", 0.0);
+                feature.setAttribute("COLOR", color == null ? 256 : color);
+                entities.add(feature);
+            }
+        }
+    }
+
+    // A copy of blockFeature with the transformed geometry and the
+    // properties inherited from this INSERT
+    private Feature instance(Feature blockFeature, AffineTransformation transformation) {
+        Geometry geometry = transformation.transform(blockFeature.getGeometry());
+        Feature feature = blockFeature.clone(false);
+        feature.setGeometry(geometry);
+        if ("0".equals(feature.getString("LAYER"))) {
+            feature.setAttribute("LAYER", layer);
+        }
+        if (ltype != null && "BYBLOCK".equals(feature.getString("LTYPE"))) {
+            feature.setAttribute("LTYPE", ltype);
+        }
+        if (color != null && Integer.valueOf(0).equals(feature.getAttribute("COLOR"))) {
+            feature.setAttribute("COLOR", color);
+        }
+        if (feature.getAttribute("TEXT") != null) {
+            Object textRotation = feature.getAttribute("TEXT_ROTATION");
+            if (textRotation instanceof Number) {
+                feature.setAttribute("TEXT_ROTATION", ((Number)textRotation).doubleValue() + rotation);
+            }
+            Object textHeight = feature.getAttribute("TEXT_HEIGHT");
+            if (textHeight instanceof Number) {
+                feature.setAttribute("TEXT_HEIGHT", ((Number)textHeight).doubleValue() * Math.abs(yScale));
+            }
+        }
+        return feature;
+    }
+
+}
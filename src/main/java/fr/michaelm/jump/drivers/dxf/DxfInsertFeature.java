@@ -0,0 +1,94 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureSchema;
+import org.locationtech.jts.geom.Geometry;
+
+/**
+ * Lightweight feature representing one INSERT (one cell of an INSERT array).
+ * It only keeps the INSERT parameters and the geometry of the block, which
+ * is shared by all the insertions of the block. Its own geometry is
+ * computed the first time it is asked for, and kept, so that the same
+ * instance is returned until a geometry is set.
+ * It is serialized as a BasicFeature with its geometry.
+ * @author Michaël Michaud
+ */
+public class DxfInsertFeature extends BasicFeature {
+
+    private final DxfINSERT insert;
+    private final Geometry blockGeometry;
+    private final int column;
+    private final int row;
+    private Geometry geometry = null;
+    private final int geometryIndex;
+
+    public DxfInsertFeature(FeatureSchema schema, DxfINSERT insert, Geometry blockGeometry,
+                            int column, int row) {
+        super(schema);
+        this.insert = insert;
+        this.blockGeometry = blockGeometry;
+        this.column = column;
+        this.row = row;
+        this.geometryIndex = schema.getGeometryIndex();
+    }
+
+    public String getBlockName() {
+        return insert.getBlockName();
+    }
+
+    public DxfINSERT getInsert() {
+        return insert;
+    }
+
+    public Geometry getGeometry() {
+        Geometry g = (Geometry)super.getAttribute(geometryIndex);
+        if (g != null) return g;
+        if (geometry == null) {
+            geometry = insert.getTransformation(column, row).transform(blockGeometry);
+        }
+        return geometry;
+    }
+
+    public Object getAttribute(int i) {
+        return i == geometryIndex ? getGeometry() : super.getAttribute(i);
+    }
+
+    public Object[] getAttributes() {
+        Object[] attributes = super.getAttributes().clone();
+        attributes[geometryIndex] = getGeometry();
+        return attributes;
+    }
+
+    // The INSERT and the block geometry are not serializable
+    private Object writeReplace() {
+        BasicFeature feature = new BasicFeature(getSchema());
+        feature.setAttributes(getAttributes());
+        return feature;
+    }
+
+}
@@ -43,14 +43,16 @@ public class DxfLINE extends DxfENTITY {
 
     public DxfLINE() {super("DEFAULT");}
 
-    public static DxfGroup readEntity(RandomAccessFile raf, FeatureCollection entities)
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, FeatureCollection entities)
                                                             throws IOException {
-        Feature feature = new BasicFeature(DxfFile.DXF_SCHEMA);
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
         feature.setAttribute("LTYPE", "BYLAYER");
         feature.setAttribute("THICKNESS", 0.0);
         feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
         double x1=Double.NaN, y1=Double.NaN, z1=Double.NaN;
         double x2=Double.NaN, y2=Double.NaN, z2=Double.NaN;
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
         DxfGroup group;
         while (null != (group = DxfGroup.readGroup(raf))) {
             int code = group.getCode();
@@ -66,14 +68,16 @@ public class DxfLINE extends DxfENTITY {
             else if (code==11) x2 = group.getDoubleValue();
             else if (code==21) y2 = group.getDoubleValue();
             else if (code==31) z2 = group.getDoubleValue();
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
             //else {}
         }
         if (!Double.isNaN(x1) && !Double.isNaN(y1) && !Double.isNaN(x2) && !Double.isNaN(y2)) {
-            GeometryFactory gf = new GeometryFactory(DPM,0);
+            GeometryFactory gf = dxfFile.getGeometryFactory();
             feature.setGeometry(gf.createLineString(
                 new Coordinate[]{new Coordinate(x1,y1,z1),new Coordinate(x2,y2,z2)})
             );
             if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
             entities.add(feature);
         }
         return group;
@@ -34,17 +34,18 @@ import org.locationtech.jts.geom.*;
 /**
  * LWPOLYLINE DXF entity.
  * This class has a static method reading a DXF LWPOLYLINE and adding the new
- * feature to a FeatureCollection
+ * feature to a FeatureCollection.
+ * Arc segments (bulges) are flattened by the DxfArcTessellator of the file.
  * @author Michaël Michaud
  */
 public class DxfLWPOLYLINE extends DxfENTITY {
 
     public DxfLWPOLYLINE() {super("DEFAULT");}
 
-    public static DxfGroup readEntity(RandomAccessFile raf, FeatureCollection entities)
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, FeatureCollection entities)
                                                             throws IOException {
         Feature feature = new BasicFeature(entities.getFeatureSchema());
-        GeometryFactory gf = new GeometryFactory(DPM,0);
+        GeometryFactory gf = dxfFile.getGeometryFactory();
         String geomType = "LineString";
         CoordinateList coordList = new CoordinateList();
         feature.setAttribute("LTYPE", "BYLAYER");
@@ -54,7 +55,11 @@ public class DxfLWPOLYLINE extends DxfENTITY {
         double x=Double.NaN;
         double y=Double.NaN;
         double z=Double.NaN;
-        Coordinate coord = null;
+        // bulge of the segment starting at the last vertex read
+        double bulge = 0.0;
+        DxfArcTessellator tessellator = dxfFile.getArcTessellator();
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
         DxfGroup group = DxfFile.ENTITIES;
         int code;
         while (0 != (code = group.getCode())) {
@@ -79,15 +84,23 @@ public class DxfLWPOLYLINE extends DxfENTITY {
                 if ((group.getIntValue()&1)==1) geomType = "Polygon";
             }
             else if (code==10) {
-                coord = new Coordinate();
-                coord.x = group.getDoubleValue();
+                x = group.getDoubleValue();
             }
             else if (code==20) {
-                if (coord != null) {
-                    coord.y = group.getDoubleValue();
+                if (!Double.isNaN(x)) {
+                    y = group.getDoubleValue();
+                    tessellator.addBulge(coordList, x, y, z, bulge);
                     coordList.add(new Coordinate(x, y, z), true);
+                    x = Double.NaN;
+                    bulge = 0.0;
                 }
             }
+            else if (code==42) {
+                bulge = group.getDoubleValue();
+            }
+            else if (code==1001) {
+                if (xdata < 0) xdata = group.getAddress();
+            }
             //else {}
             group = DxfGroup.readGroup(raf);
         }
@@ -104,9 +117,14 @@ public class DxfLWPOLYLINE extends DxfENTITY {
                 feature.setGeometry(gf.createLineString(coordList.toCoordinateArray()));
             }
             if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
             entities.add(feature);
         }
         else if (geomType.equals("Polygon")) {
+            if (coordList.size() > 1) {
+                Coordinate first = coordList.getCoordinate(0);
+                tessellator.addBulge(coordList, first.x, first.y, first.z, bulge);
+            }
             coordList.closeRing();
             // Handle cases where coordList does not describe a valid Polygon
             if (coordList.size() == 1) {
@@ -123,6 +141,7 @@ public class DxfLWPOLYLINE extends DxfENTITY {
                 feature.setGeometry(gf.createPolygon(gf.createLinearRing(coordList.toCoordinateArray())));
             }
             if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
             entities.add(feature);
         }
         //else {}
@@ -0,0 +1,99 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.RandomAccessFile;
+import java.io.IOException;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.GeometryFactory;
+
+
+/**
+ * A MTEXT and its static readEntity method to read a MTEXT in a DXF file.
+ * The chunks of the text are concatenated and its format codes are removed
+ * by the DxfMTextStripper of the file.
+ * @author Michaël Michaud
+ */
+public class DxfMTEXT extends DxfENTITY {
+
+    public DxfMTEXT() {super("DEFAULT");}
+
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile,
+                                      FeatureCollection entities)
+                                      throws IOException {
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
+        feature.setAttribute("LTYPE", "BYLAYER");
+        feature.setAttribute("THICKNESS", 0.0);
+        feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
+        feature.setAttribute("TEXT_HEIGHT", 0.0);
+        feature.setAttribute("TEXT_ROTATION", 0.0);
+        feature.setAttribute("TEXT_STYLE", "STANDARD");
+        double x=Double.NaN, y=Double.NaN, z=Double.NaN;
+        // direction of the text, which overrides the rotation angle
+        double dx=Double.NaN, dy=Double.NaN;
+        DxfMTextStripper stripper = dxfFile.getMTextStripper();
+        stripper.clear();
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
+        DxfGroup group;
+        GeometryFactory gf = dxfFile.getGeometryFactory();
+        while (null != (group = DxfGroup.readGroup(raf))) {
+            int code = group.getCode();
+            if (code == 0) break;
+            if (DxfFile.DEBUG) group.print(12);
+            if (code==8) feature.setAttribute("LAYER", group.getValue());
+            else if (code==6) feature.setAttribute("LTYPE", group.getValue());
+            else if (code==62) feature.setAttribute("COLOR", group.getIntValue());
+            else if (code==10) x = group.getDoubleValue();
+            else if (code==20) y = group.getDoubleValue();
+            else if (code==30) z = group.getDoubleValue();
+            else if (code==11) dx = group.getDoubleValue();
+            else if (code==21) dy = group.getDoubleValue();
+            else if (code==3 || code==1) stripper.append(group.getValue());
+            else if (code==40) feature.setAttribute("TEXT_HEIGHT", group.getDoubleValue());
+            else if (code==50) feature.setAttribute("TEXT_ROTATION", group.getDoubleValue());
+            else if (code==7) feature.setAttribute("TEXT_STYLE", group.getValue());
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
+            //else {}
+        }
+        if (!Double.isNaN(dx) && !Double.isNaN(dy) && (dx != 0.0 || dy != 0.0)) {
+            feature.setAttribute("TEXT_ROTATION", Math.toDegrees(Math.atan2(dy, dx)));
+        }
+        feature.setAttribute("TEXT", stripper.strip());
+        if (!Double.isNaN(x) && !Double.isNaN(y)) {
+            feature.setGeometry(gf.createPoint(new Coordinate(x,y,z)));
+            if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
+            entities.add(feature);
+        }
+        return group;
+    }
+
+}
@@ -0,0 +1,165 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+/**
+ * Removal of the inline format codes of MTEXT strings.
+ * Chunks of a text (groups 3 then group 1) are appended to a buffer, then
+ * format codes are removed in a single scan of this buffer : paragraph
+ * breaks (\P) become new lines, font, height, color... changes (\f...;) and
+ * braces are removed, stacked fractions (\S1^2;) are written 1/2, and
+ * control codes (%%c, %%d, %%p) are replaced by the symbol they stand for.
+ * Buffers are reused from one text to the next one, so that a stripper is
+ * not thread-safe.
+ * @author Michaël Michaud
+ */
+public class DxfMTextStripper {
+
+    private char[] chunks = new char[256];
+    private int length;
+    private char[] text = new char[256];
+
+    public DxfMTextStripper() {}
+
+   /**
+    * Start a new text.
+    */
+    public void clear() {
+        length = 0;
+    }
+
+   /**
+    * Append a chunk of the text to strip.
+    */
+    public void append(String chunk) {
+        int size = chunk.length();
+        if (chunks.length < length + size) {
+            char[] array = new char[Math.max(length + size, 2 * chunks.length)];
+            System.arraycopy(chunks, 0, array, 0, length);
+            chunks = array;
+        }
+        chunk.getChars(0, size, chunks, length);
+        length += size;
+    }
+
+   /**
+    * Return the text appended since the last call to clear, without its
+    * format codes.
+    */
+    public String strip() {
+        if (text.length < length) text = new char[chunks.length];
+        char[] in = chunks;
+        char[] out = text;
+        int n = 0;
+        int i = 0;
+        while (i < length) {
+            char c = in[i++];
+            if (c == '\\' && i < length) {
+                char code = in[i++];
+                switch (code) {
+                    case 'P' :
+                    case 'N' :
+                        out[n++] = '\n';
+                        break;
+                    case '~' :
+                        out[n++] = ' ';
+                        break;
+                    case '\\' :
+                    case '{' :
+                    case '}' :
+                        out[n++] = code;
+                        break;
+                    case 'S' :
+                        // stacked text : numerator, separator and denominator
+                        while (i < length && in[i] != ';') {
+                            char s = in[i++];
+                            if (s == '^' || s == '#') out[n++] = '/';
+                            else if (s == '\\' && i < length) out[n++] = in[i++];
+                            else out[n++] = s;
+                        }
+                        i++;
+                        break;
+                    case 'U' :
+                        // unicode character \U+XXXX
+                        if (i + 4 < length && in[i] == '+') {
+                            int value = hex(in, i + 1, 4);
+                            if (value >= 0) {
+                                out[n++] = (char)value;
+                                i += 5;
+                                break;
+                            }
+                        }
+                        out[n++] = c;
+                        out[n++] = code;
+                        break;
+                    case 'L' : case 'l' :
+                    case 'O' : case 'o' :
+                    case 'K' : case 'k' :
+                        // underline, overline and strike-through
+                        break;
+                    case 'A' : case 'C' : case 'c' : case 'F' : case 'f' :
+                    case 'H' : case 'Q' : case 'T' : case 'W' : case 'p' :
+                        // formatting value ending with a semicolon
+                        while (i < length && in[i] != ';') i++;
+                        i++;
+                        break;
+                    default :
+                        out[n++] = c;
+                        out[n++] = code;
+                }
+            }
+            else if (c == '{' || c == '}') {
+                // grouping
+            }
+            else if (c == '%' && i + 1 < length && in[i] == '%') {
+                char code = in[i + 1];
+                if (code == 'c' || code == 'C') out[n++] = 'Ø';
+                else if (code == 'd' || code == 'D') out[n++] = '°';
+                else if (code == 'p' || code == 'P') out[n++] = '±';
+                else if (code == '%') out[n++] = '%';
+                else {
+                    out[n++] = c;
+                    continue;
+                }
+                i += 2;
+            }
+            else out[n++] = c;
+        }
+        return new String(out, 0, n);
+    }
+
+    // Value of the count hexadecimal digits starting at offset, or -1
+    private static int hex(char[] array, int offset, int count) {
+        int value = 0;
+        for (int i = offset ; i < offset + count ; i++) {
+            int digit = Character.digit(array[i], 16);
+            if (digit < 0) return -1;
+            value = 16 * value + digit;
+        }
+        return value;
+    }
+
+}
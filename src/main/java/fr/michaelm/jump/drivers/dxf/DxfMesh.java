@@ -0,0 +1,152 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.Geometry;
+import org.locationtech.jts.geom.GeometryFactory;
+import org.locationtech.jts.geom.Polygon;
+
+/**
+ * Vertices and faces of a polyface mesh or of a polygon mesh POLYLINE.
+ * Vertices are stored in a primitive array and faces reference them by
+ * index. When the geometry is built, each face gets its own Coordinate
+ * instances, so that editing a face does not move its neighbours.
+ * @author Michaël Michaud
+ */
+public class DxfMesh {
+
+    // Interleaved x, y, z of vertices
+    private double[] vertices = new double[3 * 16];
+    private int vertexCount;
+
+    // Vertex indices (1-based, 0 if absent) of faces, 4 per face
+    private int[] faces = new int[4 * 16];
+    private int faceCount;
+
+    public DxfMesh() {}
+
+    public int getVertexCount() {
+        return vertexCount;
+    }
+
+    public int getFaceCount() {
+        return faceCount;
+    }
+
+    public void addVertex(double x, double y, double z) {
+        if (vertices.length < 3 * (vertexCount + 1)) {
+            double[] array = new double[2 * vertices.length];
+            System.arraycopy(vertices, 0, array, 0, 3 * vertexCount);
+            vertices = array;
+        }
+        vertices[3 * vertexCount] = x;
+        vertices[3 * vertexCount + 1] = y;
+        vertices[3 * vertexCount + 2] = z;
+        vertexCount++;
+    }
+
+   /**
+    * Add a face record of a polyface mesh. Indices are 1-based, negative
+    * for an invisible edge and 0 if the face has less than 4 vertices.
+    */
+    public void addFace(int i1, int i2, int i3, int i4) {
+        if (faces.length < 4 * (faceCount + 1)) {
+            int[] array = new int[2 * faces.length];
+            System.arraycopy(faces, 0, array, 0, 4 * faceCount);
+            faces = array;
+        }
+        faces[4 * faceCount] = Math.abs(i1);
+        faces[4 * faceCount + 1] = Math.abs(i2);
+        faces[4 * faceCount + 2] = Math.abs(i3);
+        faces[4 * faceCount + 3] = Math.abs(i4);
+        faceCount++;
+    }
+
+   /**
+    * Return the faces of a polyface mesh, or null if it has no valid face.
+    */
+    public Geometry getPolyface(GeometryFactory factory) {
+        List<Polygon> polygons = new ArrayList<>(faceCount);
+        int[] face = new int[4];
+        for (int f = 0 ; f < faceCount ; f++) {
+            System.arraycopy(faces, 4 * f, face, 0, 4);
+            addFace(factory, face, polygons);
+        }
+        return polygons.isEmpty() ? null :
+                factory.createMultiPolygon(polygons.toArray(new Polygon[0]));
+    }
+
+   /**
+    * Return the quadrilaterals of a polygon mesh of m x n vertices, closed
+    * in the m and/or n directions, or null if it has no valid face.
+    */
+    public Geometry getPolygonMesh(GeometryFactory factory, int m, int n,
+                                   boolean closedM, boolean closedN) {
+        if (m < 1 || n < 1 || m * n > vertexCount) return null;
+        List<Polygon> polygons = new ArrayList<>();
+        int[] face = new int[4];
+        int rows = closedM ? m : m - 1;
+        int columns = closedN ? n : n - 1;
+        for (int i = 0 ; i < rows ; i++) {
+            int i1 = (i + 1) % m;
+            for (int j = 0 ; j < columns ; j++) {
+                int j1 = (j + 1) % n;
+                face[0] = i * n + j + 1;
+                face[1] = i * n + j1 + 1;
+                face[2] = i1 * n + j1 + 1;
+                face[3] = i1 * n + j + 1;
+                addFace(factory, face, polygons);
+            }
+        }
+        return polygons.isEmpty() ? null :
+                factory.createMultiPolygon(polygons.toArray(new Polygon[0]));
+    }
+
+    // Add the polygon of face (1-based indices) if it has at least 3
+    // distinct vertices
+    private void addFace(GeometryFactory factory, int[] face, List<Polygon> polygons) {
+        Coordinate[] ring = new Coordinate[5];
+        int size = 0;
+        for (int k = 0 ; k < 4 ; k++) {
+            int index = face[k] - 1;
+            if (index < 0 || index >= vertexCount) continue;
+            Coordinate vertex = new Coordinate(vertices[3 * index], vertices[3 * index + 1], vertices[3 * index + 2]);
+            if (size > 0 && vertex.equals2D(ring[size - 1])) continue;
+            ring[size++] = vertex;
+        }
+        if (size > 1 && ring[0].equals2D(ring[size - 1])) size--;
+        if (size < 3) return;
+        Coordinate[] coords = new Coordinate[size + 1];
+        System.arraycopy(ring, 0, coords, 0, size);
+        coords[size] = new Coordinate(coords[0]);
+        polygons.add(factory.createPolygon(factory.createLinearRing(coords)));
+    }
+
+}
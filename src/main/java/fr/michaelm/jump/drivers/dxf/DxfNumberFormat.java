@@ -0,0 +1,290 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+/**
+ * Fast, thread-safe and allocation-free formatter for numeric DXF values.
+ * <p>
+ * {@link #format(double, int, char[], int)} writes a double with a fixed
+ * number of decimals (0 to 12) directly into a buffer. The result is the same
+ * as the one of a DecimalFormat using the "#0.000" patterns and Locale.US
+ * symbols : it rounds half-even according to the exact binary value and
+ * keeps a '-' sign for negative values rounded to zero.
+ * </p>
+ * <p>
+ * With {@link #SHORTEST} decimals, the value is written with the smallest
+ * number of decimals giving back the same double when it is parsed.
+ * </p>
+ * Numbers which cannot be computed exactly with a long (very large numbers,
+ * or numbers too large for the requested precision) and non-finite numbers
+ * are formatted with BigDecimal, which is slower and allocates objects.
+ * @author Michaël Michaud
+ */
+public final class DxfNumberFormat {
+
+    /** Decimals value used to get the shortest representation of a double. */
+    public static final int SHORTEST = -1;
+
+    /** Maximum number of decimals in fixed precision mode. */
+    public static final int MAX_DECIMALS = 12;
+
+    /** Maximum number of characters written by format methods. */
+    public static final int MAX_LENGTH = 1 + 309 + 1 + 340;
+
+    private static final double[] POW10 = new double[18];
+    private static final long[] LONG_POW10 = new long[18];
+    static {
+        long p = 1L;
+        for (int i = 0 ; i < POW10.length ; i++) {
+            LONG_POW10[i] = p;
+            POW10[i] = p;
+            p *= 10L;
+        }
+    }
+
+    // Integers up to 2^52 are exact and have an ulp lower than 0.5
+    private static final double FAST_LIMIT = 4503599627370496.0;
+
+    // Veltkamp splitter for double-double product (2^27 + 1)
+    private static final double SPLITTER = 134217729.0;
+
+    private DxfNumberFormat() {}
+
+   /**
+    * Format value with decimals decimals (0 to 12, or SHORTEST).
+    */
+    public static String format(double value, int decimals) {
+        char[] buf = new char[MAX_LENGTH];
+        return new String(buf, 0, format(value, decimals, buf, 0));
+    }
+
+   /**
+    * Write value with decimals decimals (0 to 12, or SHORTEST) into buf,
+    * starting at pos. buf must have at least MAX_LENGTH available chars.
+    * @return the position following the last char written
+    */
+    public static int format(double value, int decimals, char[] buf, int pos) {
+        checkDecimals(decimals);
+        boolean negative = isNegative(value);
+        double abs = Math.abs(value);
+        long n;
+        if (decimals == SHORTEST) {
+            decimals = shortestDecimals(abs);
+            n = decimals < 0 ? -1L : roundedScaledValue(abs, decimals);
+        }
+        else n = scaledValue(abs, decimals);
+        if (n < 0L) {
+            String s = slowFormat(value, decimals);
+            s.getChars(0, s.length(), buf, pos);
+            return pos + s.length();
+        }
+        if (negative) buf[pos++] = '-';
+        long intPart = n / LONG_POW10[decimals];
+        int end = pos + stringSize(intPart) + (decimals > 0 ? decimals + 1 : 0);
+        int i = end;
+        for (int k = 0 ; k < decimals ; k++) {
+            buf[--i] = (char)('0' + n % 10L);
+            n /= 10L;
+        }
+        if (decimals > 0) buf[--i] = '.';
+        do {
+            buf[--i] = (char)('0' + n % 10L);
+            n /= 10L;
+        } while (n != 0L);
+        return end;
+    }
+
+   /**
+    * Write value with decimals decimals (0 to 12, or SHORTEST) as ASCII
+    * bytes into buf, starting at pos. buf must have at least MAX_LENGTH
+    * available bytes.
+    * @return the position following the last byte written
+    */
+    public static int format(double value, int decimals, byte[] buf, int pos) {
+        checkDecimals(decimals);
+        boolean negative = isNegative(value);
+        double abs = Math.abs(value);
+        long n;
+        if (decimals == SHORTEST) {
+            decimals = shortestDecimals(abs);
+            n = decimals < 0 ? -1L : roundedScaledValue(abs, decimals);
+        }
+        else n = scaledValue(abs, decimals);
+        if (n < 0L) {
+            String s = slowFormat(value, decimals);
+            for (int i = 0 ; i < s.length() ; i++) {
+                char c = s.charAt(i);
+                buf[pos++] = c < 128 ? (byte)c : (byte)'?';
+            }
+            return pos;
+        }
+        if (negative) buf[pos++] = '-';
+        long intPart = n / LONG_POW10[decimals];
+        int end = pos + stringSize(intPart) + (decimals > 0 ? decimals + 1 : 0);
+        int i = end;
+        for (int k = 0 ; k < decimals ; k++) {
+            buf[--i] = (byte)('0' + n % 10L);
+            n /= 10L;
+        }
+        if (decimals > 0) buf[--i] = '.';
+        do {
+            buf[--i] = (byte)('0' + n % 10L);
+            n /= 10L;
+        } while (n != 0L);
+        return end;
+    }
+
+   /**
+    * Return true if a and b are written the same way with decimals decimals
+    * (0 and -0 being considered as equal). NaN values are equal to each other.
+    */
+    static boolean isSameValue(double a, double b, int decimals) {
+        if (a == b || (Double.isNaN(a) && Double.isNaN(b))) return true;
+        if (decimals == SHORTEST) return false;
+        long na = scaledValue(Math.abs(a), decimals);
+        long nb = scaledValue(Math.abs(b), decimals);
+        if (na < 0L || nb < 0L) {
+            return format(Math.abs(a), decimals).equals(format(Math.abs(b), decimals)) &&
+                    isNegative(a) == isNegative(b);
+        }
+        return na == nb && (na == 0L || isNegative(a) == isNegative(b));
+    }
+
+    private static void checkDecimals(int decimals) {
+        if (decimals != SHORTEST && (decimals < 0 || decimals > MAX_DECIMALS)) {
+            throw new IllegalArgumentException("Number of decimals must be in [0-" +
+                    MAX_DECIMALS + "] : " + decimals);
+        }
+    }
+
+    // DecimalFormat keeps the sign of negative numbers rounded to 0 and of -0.0
+    private static boolean isNegative(double value) {
+        return value < 0.0 || (value == 0.0 && 1.0 / value < 0.0);
+    }
+
+   /**
+    * Return abs * 10^decimals rounded half-even, or -1 if it cannot be
+    * computed exactly, or if the result could differ from DecimalFormat's one.
+    * DecimalFormat starts from the shortest decimal representation of the
+    * double : it is the same as the exactly rounded value as long as
+    * 10^-decimals is greater than the ulp of the double.
+    */
+    private static long scaledValue(double abs, int decimals) {
+        if (Math.ulp(abs) * POW10[decimals] >= 1.0) return -1L;
+        return roundedScaledValue(abs, decimals);
+    }
+
+   /**
+    * Return abs * 10^decimals rounded half-even according to the exact value
+    * of the product, or -1 if the result is out of the exact long range.
+    */
+    private static long roundedScaledValue(double abs, int decimals) {
+        double p = POW10[decimals];
+        double scaled = abs * p;
+        // NaN and infinity also fail this test
+        if (!(scaled < FAST_LIMIT)) return -1L;
+        // exact value of the product is scaled + error
+        double error = productError(abs, p, scaled);
+        double floor = Math.floor(scaled);
+        long n = (long)floor;
+        // exact because scaled < 2^52 ; if not null, the difference with 0.5
+        // is at least one ulp of scaled, which is larger than error
+        double diff = (scaled - floor) - 0.5;
+        if (diff > 0.0 || (diff == 0.0 && (error > 0.0 || (error == 0.0 && (n & 1L) == 1L)))) {
+            n++;
+        }
+        return n;
+    }
+
+    // Dekker's algorithm : returns the rounding error of the a * b product
+    private static double productError(double a, double b, double product) {
+        double c = SPLITTER * a;
+        double aHigh = c - (c - a);
+        double aLow = a - aHigh;
+        c = SPLITTER * b;
+        double bHigh = c - (c - b);
+        double bLow = b - bHigh;
+        return ((aHigh * bHigh - product) + aHigh * bLow + aLow * bHigh) + aLow * bLow;
+    }
+
+   /**
+    * Return the smallest number of decimals needed to write abs so that it
+    * can be read back exactly, or SHORTEST if it cannot be computed exactly.
+    */
+    private static int shortestDecimals(double abs) {
+        for (int decimals = 0 ; decimals < POW10.length ; decimals++) {
+            long n = roundedScaledValue(abs, decimals);
+            if (n < 0L) return SHORTEST;
+            // n and 10^decimals are exact doubles, so that the division
+            // returns the double nearest to the decimal number, as parsing does
+            if (n / POW10[decimals] == abs) return decimals;
+        }
+        return SHORTEST;
+    }
+
+    private static int stringSize(long x) {
+        long p = 10L;
+        for (int i = 1 ; i < 19 ; i++) {
+            if (x < p) return i;
+            p = 10L * p;
+        }
+        return 19;
+    }
+
+   /**
+    * Format value like DecimalFormat does, using BigDecimal.
+    */
+    private static String slowFormat(double value, int decimals) {
+        if (Double.isNaN(value)) return "NaN";
+        String sign = isNegative(value) ? "-" : "";
+        if (Double.isInfinite(value)) return sign + "∞";
+        double abs = Math.abs(value);
+        // DecimalFormat starts from the shortest representation of the double
+        BigDecimal shortest = new BigDecimal(Double.toString(abs));
+        if (decimals == SHORTEST) {
+            return sign + shortest.stripTrailingZeros().toPlainString();
+        }
+        BigDecimal rounded;
+        if (shortest.scale() <= decimals) {
+            rounded = shortest.setScale(decimals);
+        }
+        else {
+            rounded = shortest.setScale(decimals, RoundingMode.HALF_EVEN);
+            // a tie in the shortest representation is decided by the exact value
+            if (shortest.setScale(decimals, RoundingMode.HALF_UP)
+                    .compareTo(shortest.setScale(decimals, RoundingMode.HALF_DOWN)) != 0) {
+                int comp = new BigDecimal(abs).compareTo(shortest);
+                if (comp > 0) rounded = shortest.setScale(decimals, RoundingMode.UP);
+                else if (comp < 0) rounded = shortest.setScale(decimals, RoundingMode.DOWN);
+            }
+        }
+        return sign + rounded.toPlainString();
+    }
+
+}
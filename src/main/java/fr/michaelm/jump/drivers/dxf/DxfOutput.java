@@ -0,0 +1,717 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.File;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Buffered output of DXF groups.
+ * Codes, integers and numbers are encoded as ASCII directly into a reusable
+ * byte buffer, so that no intermediate String is created for each group or
+ * each entity. Strings are copied as is when they are ASCII (nearly all of
+ * them), and encoded once in the code page of the output otherwise.
+ * It produces exactly the same characters as DxfGroup.toString methods.
+ * <p>
+ * A file output writes its buffer with a FileChannel.
+ * A Writer output encodes in UTF-8 internally and decodes the buffer when it
+ * is flushed, so that the Writer receives the original chars.
+ * An output created without Writer or file keeps everything in memory, so
+ * that entities can be formatted in another thread and copied in order.
+ * Beyond SPILL_SIZE bytes, it spills its content into a temporary file,
+ * deleted when the output is closed.
+ * </p>
+ * <p>
+ * Handles are numbered by a counter as groups are written. In an in-memory
+ * output, they are only numbered when it is copied into its final output.
+ * Fields whose value is only known at the end of the export, like
+ * $HANDSEED, can be reserved and patched later : a file output patches the
+ * file in place, and a Writer output keeps its content in memory until
+ * every reserved field has been patched.
+ * </p>
+ * @author Michaël Michaud
+ */
+public class DxfOutput implements Closeable, Flushable {
+
+    /** Default code page of DXF files. */
+    public static final String DEFAULT_CODE_PAGE = "ANSI_1252";
+
+    private static final int FILE_BUFFER_SIZE = 1 << 20;
+    private static final int BUFFER_SIZE = 1 << 16;
+    private static final int MEMORY_BUFFER_SIZE = 1 << 13;
+    private static final int SPILL_SIZE = 1 << 24;
+    private static final byte[] HEX_DIGITS = "0123456789ABCDEF".getBytes(StandardCharsets.US_ASCII);
+
+    private final Writer writer;
+    private final FileChannel channel;
+    // Temporary file of an in-memory output grown beyond SPILL_SIZE
+    private FileChannel spill;
+    private final String codePage;
+    private final Charset charset;
+    private byte[] buffer;
+    private int position;
+    // Number of bytes already written to the writer or to the channel
+    private long flushed = 0L;
+
+    // Reserved fields not patched yet
+    private int reserved = 0;
+
+    // Next handle, and positions of the handles to number in memory, with
+    // the index of the handle they refer to (-1 for a new handle)
+    private long handle = 1L;
+    private long[] handlePositions = new long[0];
+    private int[] handleReferences = new int[0];
+    private int handleCount = 0;
+    private int newHandleCount = 0;
+
+    // Extents of the entities written
+    private final Envelope extents = new Envelope();
+    // Linetypes of the entities written (R2000)
+    private final Set<String> linetypes = new LinkedHashSet<>();
+
+    // Export options
+    private boolean lwPolyline = false;
+    private boolean r2000 = false;
+    private int precision = DxfENTITY.precision;
+    private boolean quantized = false;
+    private double simplifyTolerance = 0.0;
+    private boolean topologyPreserving = false;
+
+   /**
+    * Create an output writing into writer. The encoding of the file depends
+    * on writer, so that its code page is unknown (null).
+    */
+    public DxfOutput(Writer writer) {
+        this.writer = writer;
+        this.channel = null;
+        this.codePage = null;
+        this.charset = StandardCharsets.UTF_8;
+        this.buffer = new byte[BUFFER_SIZE];
+    }
+
+   /**
+    * Create an output writing into file with the default code page.
+    */
+    public DxfOutput(File file) throws IOException {
+        this(file, DEFAULT_CODE_PAGE);
+    }
+
+   /**
+    * Create an output writing into file. Non-ASCII strings are encoded with
+    * codePage, a DXF code page name like ANSI_1252 or DOS850 (a java charset
+    * name is also accepted).
+    * Reserved fields are patched in the file itself, so that the whole content
+    * never stays in memory.
+    */
+    public DxfOutput(File file, String codePage) throws IOException {
+        this.writer = null;
+        this.codePage = codePage;
+        this.charset = charset(codePage);
+        this.channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        this.buffer = new byte[FILE_BUFFER_SIZE];
+    }
+
+   /**
+    * Create an in-memory output with the default code page, which grows as
+    * needed and can be copied later into another output with
+    * {@link #writeTo(DxfOutput)}.
+    */
+    public DxfOutput() {
+        this(DEFAULT_CODE_PAGE);
+    }
+
+   /**
+    * Create an in-memory output encoding non-ASCII strings with codePage.
+    * Its export options can be used as a template for file outputs created
+    * with {@link #createFile(File)}.
+    */
+    public DxfOutput(String codePage) {
+        this(codePage, charset(codePage));
+    }
+
+    private DxfOutput(String codePage, Charset charset) {
+        this.writer = null;
+        this.channel = null;
+        this.codePage = codePage;
+        this.charset = charset;
+        this.buffer = new byte[MEMORY_BUFFER_SIZE];
+    }
+
+   /**
+    * Create an in-memory output using the same export options and the same
+    * encoding as this one.
+    */
+    public DxfOutput createBuffer() {
+        return copyOptions(new DxfOutput(codePage, charset));
+    }
+
+   /**
+    * Create an output writing into file with the same export options and
+    * the same code page as this one (the default code page if this one
+    * writes into a Writer).
+    */
+    public DxfOutput createFile(File file) throws IOException {
+        return copyOptions(new DxfOutput(file, codePage == null ? DEFAULT_CODE_PAGE : codePage));
+    }
+
+    private DxfOutput copyOptions(DxfOutput output) {
+        output.lwPolyline = lwPolyline;
+        output.r2000 = r2000;
+        output.precision = precision;
+        output.quantized = quantized;
+        output.simplifyTolerance = simplifyTolerance;
+        output.topologyPreserving = topologyPreserving;
+        return output;
+    }
+
+   /**
+    * Return the java charset of a DXF code page ($DWGCODEPAGE value).
+    */
+    public static Charset charset(String codePage) {
+        String name = codePage.trim().toUpperCase();
+        if (name.startsWith("ANSI_")) {
+            name = name.substring(5);
+            switch (name) {
+                case "874" : return Charset.forName("x-windows-874");
+                case "932" : return Charset.forName("windows-31j");
+                case "936" : return Charset.forName("GBK");
+                case "949" : return Charset.forName("x-windows-949");
+                case "950" : return Charset.forName("x-windows-950");
+                default : return Charset.forName("windows-" + name);
+            }
+        }
+        if (name.startsWith("DOS")) {
+            return Charset.forName("IBM" + name.substring(3));
+        }
+        return Charset.forName(codePage.trim());
+    }
+
+   /**
+    * Return the DXF code page of this output, or null if its encoding is
+    * not known (output writing into a Writer).
+    */
+    public String getCodePage() {
+        return codePage;
+    }
+
+   /**
+    * Write LineStrings and polygon rings as LWPOLYLINE entities (R2000)
+    * instead of POLYLINE, VERTEX and SEQEND entities (R12).
+    * LWPOLYLINE entities only exist in R2000 files, so that it also turns on
+    * the R2000 profile.
+    */
+    public void setLwPolyline(boolean lwPolyline) {
+        this.lwPolyline = lwPolyline;
+        if (lwPolyline) r2000 = true;
+    }
+
+    public boolean isLwPolyline() {
+        return lwPolyline;
+    }
+
+   /**
+    * Write a complete R2000 file : CLASSES and OBJECTS sections, R2000
+    * tables, and handles on every table record and entity.
+    * The R2000 profile cannot be turned off while LWPOLYLINE entities are
+    * written.
+    */
+    public void setR2000(boolean r2000) {
+        this.r2000 = r2000 || lwPolyline;
+    }
+
+    public boolean isR2000() {
+        return r2000;
+    }
+
+   /**
+    * Return true if the file is an AC1015 (R2000) file, whose entities need
+    * subclass markers (same as {@link #isR2000()}).
+    */
+    public boolean isAC1015() {
+        return r2000;
+    }
+
+   /**
+    * Write coordinates with precision decimals (0 to 12), and snap vertices
+    * to this grid : consecutive vertices which would be written with the
+    * same values are written once, and linestrings or polygon rings reduced
+    * to a point or to a segment are not written.
+    * Without explicit precision, coordinates are written with
+    * {@link DxfENTITY#precision} decimals and every vertex is written.
+    */
+    public void setPrecision(int precision) {
+        if (precision < 0 || precision > DxfNumberFormat.MAX_DECIMALS) {
+            throw new IllegalArgumentException("Precision must be in [0-" +
+                    DxfNumberFormat.MAX_DECIMALS + "] : " + precision);
+        }
+        this.precision = precision;
+        this.quantized = true;
+    }
+
+   /**
+    * Return the number of decimals of coordinates.
+    */
+    public int getPrecision() {
+        return precision;
+    }
+
+   /**
+    * Return true if vertices are snapped to the precision grid and
+    * duplicate vertices removed.
+    */
+    public boolean isQuantized() {
+        return quantized;
+    }
+
+   /**
+    * Simplify linestrings and polygon rings with the Douglas-Peucker
+    * algorithm as they are written (0 means no simplification).
+    */
+    public void setSimplifyTolerance(double simplifyTolerance) {
+        this.simplifyTolerance = simplifyTolerance;
+    }
+
+    public double getSimplifyTolerance() {
+        return simplifyTolerance;
+    }
+
+   /**
+    * Simplify the geometry of each feature as a whole, so that its rings
+    * and lines do not cross each other, instead of simplifying each
+    * linestring and ring independently.
+    */
+    public void setTopologyPreserving(boolean topologyPreserving) {
+        this.topologyPreserving = topologyPreserving;
+    }
+
+    public boolean isTopologyPreserving() {
+        return topologyPreserving;
+    }
+
+   /**
+    * Set the value of the next handle.
+    */
+    public void setHandleSeed(long handle) {
+        this.handle = handle;
+    }
+
+   /**
+    * Return the value of the next handle, which is the $HANDSEED value at the
+    * end of the export.
+    */
+    public long getHandleSeed() {
+        return handle;
+    }
+
+   /**
+    * Write a group with the next handle as value.
+    */
+    public DxfOutput handle(int code) throws IOException {
+        code(code);
+        handleValue(-1L);
+        return newLine();
+    }
+
+   /**
+    * Return a reference to the last handle written, which can be written
+    * again later with {@link #handleReference(int, long)} (in an in-memory
+    * output, it is only numbered when the output is copied).
+    */
+    public long lastHandle() {
+        return isInMemory() ? newHandleCount - 1 : handle - 1;
+    }
+
+   /**
+    * Write a group whose value is a handle written before, like the owner of
+    * a sub-entity.
+    * @param reference a reference returned by {@link #lastHandle()}
+    */
+    public DxfOutput handleReference(int code, long reference) throws IOException {
+        code(code);
+        handleValue(reference);
+        return newLine();
+    }
+
+   /**
+    * Expand the extents of this output to include envelope.
+    */
+    public void expandExtents(Envelope envelope) {
+        extents.expandToInclude(envelope);
+    }
+
+   /**
+    * Return the extents of the entities written to this output (including
+    * in-memory outputs copied into it).
+    */
+    public Envelope getExtents() {
+        return extents;
+    }
+
+   /**
+    * Write the linetype group (code 6) of an entity. In a R2000 file, the
+    * linetype is remembered to be declared in the LTYPE table.
+    */
+    public DxfOutput linetype(Object ltype) throws IOException {
+        if (r2000) linetypes.add(ltype.toString());
+        return group(6, ltype);
+    }
+
+   /**
+    * Return the linetypes of the entities written to this output (including
+    * in-memory outputs copied into it), in the order of their first use.
+    */
+    public Set<String> getLinetypes() {
+        return linetypes;
+    }
+
+   /**
+    * Return true if reserved fields can be patched without keeping the
+    * whole content in memory, which is the case of file outputs (and of
+    * in-memory outputs).
+    */
+    public boolean isPatchable() {
+        return writer == null;
+    }
+
+   /**
+    * Return the number of bytes written to this output.
+    */
+    public long getPosition() {
+        return flushed + position;
+    }
+
+   /**
+    * Write a group with a blank value of width chars, to be replaced later
+    * with {@link #patch(long, String)}.
+    * @return the position of the value
+    */
+    public long reserve(int code, int width) throws IOException {
+        code(code);
+        ensureCapacity(width);
+        long offset = getPosition();
+        Arrays.fill(buffer, position, position + width, (byte)' ');
+        position += width;
+        reserved++;
+        newLine();
+        return offset;
+    }
+
+   /**
+    * Replace the value reserved at offset by value, an ASCII String which
+    * must have the width of the reserved field.
+    */
+    public void patch(long offset, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.US_ASCII);
+        if (offset >= flushed) {
+            System.arraycopy(bytes, 0, buffer, (int)(offset - flushed), bytes.length);
+        }
+        else {
+            ByteBuffer bb = ByteBuffer.wrap(bytes);
+            while (bb.hasRemaining()) {
+                offset += channel.write(bb, offset);
+            }
+        }
+        reserved--;
+    }
+
+   /**
+    * Write a group with a string value.
+    */
+    public DxfOutput group(int code, String value) throws IOException {
+        code(code);
+        write(value);
+        return newLine();
+    }
+
+   /**
+    * Write a group with an integer value right-aligned on 6 characters.
+    */
+    public DxfOutput group(int code, int value) throws IOException {
+        code(code);
+        int6car(value);
+        return newLine();
+    }
+
+   /**
+    * Write a group with a numeric value formatted with decimalPartLength
+    * decimals.
+    */
+    public DxfOutput group(int code, double value, int decimalPartLength) throws IOException {
+        code(code);
+        ensureCapacity(DxfNumberFormat.MAX_LENGTH);
+        position = DxfNumberFormat.format(value, decimalPartLength, buffer, position);
+        return newLine();
+    }
+
+   /**
+    * Write a group with a value formatted according to its type, as
+    * {@link DxfGroup#toString(int, Object)} does.
+    */
+    public DxfOutput group(int code, Object value) throws IOException {
+        if (value instanceof String) {return group(code, (String)value);}
+        else if (value instanceof Integer) {return group(code, ((Integer)value).intValue());}
+        else if (value instanceof Float) {return group(code, (Float)value, 3);}
+        else if (value instanceof Double) {return group(code, (Double)value, 6);}
+        else return group(code, value.toString());
+    }
+
+   /**
+    * Write a raw string, which must already be formatted as DXF groups.
+    */
+    public DxfOutput write(String s) throws IOException {
+        if (s == null) s = "null";
+        int length = s.length();
+        ensureCapacity(length);
+        int p = position;
+        for (int i = 0 ; i < length ; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // Non-ASCII String : encoded as a whole
+                write(s.getBytes(charset), 0);
+                return this;
+            }
+            buffer[p++] = (byte)c;
+        }
+        position = p;
+        return this;
+    }
+
+    private void write(byte[] bytes, int offset) throws IOException {
+        write(bytes, offset, bytes.length - offset);
+    }
+
+    private void write(byte[] bytes, int offset, int length) throws IOException {
+        ensureCapacity(length);
+        System.arraycopy(bytes, offset, buffer, position, length);
+        position += length;
+    }
+
+   /**
+    * Copy the content of this in-memory output into out, which must use the
+    * same encoding (see {@link #createBuffer()}).
+    */
+    public void writeTo(DxfOutput out) throws IOException {
+        long from = 0L;
+        ByteBuffer bb = spill == null ? null : ByteBuffer.allocate(BUFFER_SIZE);
+        // references are shifted by the handles already written in out
+        long first = out.isInMemory() ? out.newHandleCount : out.handle;
+        for (int i = 0 ; i < handleCount ; i++) {
+            copy(out, from, handlePositions[i], bb);
+            out.handleValue(handleReferences[i] < 0 ? -1L : first + handleReferences[i]);
+            from = handlePositions[i];
+        }
+        copy(out, from, getPosition(), bb);
+        out.extents.expandToInclude(extents);
+        out.linetypes.addAll(linetypes);
+    }
+
+    // Copy the bytes from position from to position to into out, reading
+    // the spilled ones through bb
+    private void copy(DxfOutput out, long from, long to, ByteBuffer bb) throws IOException {
+        while (from < Math.min(to, flushed)) {
+            bb.clear();
+            bb.limit((int)Math.min(bb.capacity(), Math.min(to, flushed) - from));
+            int n = spill.read(bb, from);
+            if (n < 0) throw new EOFException("Spill file truncated at " + from);
+            out.write(bb.array(), 0, n);
+            from += n;
+        }
+        if (to > from) out.write(buffer, (int)(from - flushed), (int)(to - from));
+    }
+
+    // Same as DxfGroup.int34car
+    private void code(int code) throws IOException {
+        ensureCapacity(16);
+        if (code < 10) {
+            buffer[position++] = ' ';
+            buffer[position++] = ' ';
+        }
+        else if (code < 100) {
+            buffer[position++] = ' ';
+        }
+        appendInt(code);
+        newLine();
+    }
+
+    // Same as DxfGroup.int6car : right-aligned on 6 characters, keeping the
+    // 6 last characters of longer numbers
+    private void int6car(int value) throws IOException {
+        ensureCapacity(16);
+        int start = position;
+        appendInt(value);
+        int length = position - start;
+        if (length < 6) {
+            int shift = 6 - length;
+            System.arraycopy(buffer, start, buffer, start + shift, length);
+            for (int i = 0 ; i < shift ; i++) buffer[start + i] = ' ';
+            position = start + 6;
+        }
+        else if (length > 6) {
+            System.arraycopy(buffer, position - 6, buffer, start, 6);
+            position = start + 6;
+        }
+    }
+
+    private void appendInt(int value) {
+        if (value == Integer.MIN_VALUE) {
+            byte[] bytes = Integer.toString(value).getBytes(StandardCharsets.US_ASCII);
+            System.arraycopy(bytes, 0, buffer, position, bytes.length);
+            position += bytes.length;
+            return;
+        }
+        if (value < 0) {
+            buffer[position++] = '-';
+            value = -value;
+        }
+        int start = position;
+        do {
+            buffer[position++] = (byte)('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        // reverse digits
+        for (int i = start, j = position - 1 ; i < j ; i++, j--) {
+            byte b = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = b;
+        }
+    }
+
+    private boolean isInMemory() {
+        return writer == null && channel == null;
+    }
+
+    // Write the next handle (reference < 0) or a handle written before, or
+    // remember its position in an in-memory output
+    private void handleValue(long reference) throws IOException {
+        if (isInMemory()) {
+            if (handleCount == handlePositions.length) {
+                int length = Math.max(16, 2 * handleCount);
+                handlePositions = Arrays.copyOf(handlePositions, length);
+                handleReferences = Arrays.copyOf(handleReferences, length);
+            }
+            handlePositions[handleCount] = getPosition();
+            handleReferences[handleCount++] = (int)reference;
+            if (reference < 0) newHandleCount++;
+            return;
+        }
+        ensureCapacity(16);
+        long h = reference < 0 ? handle++ : reference;
+        int length = Math.max(1, (67 - Long.numberOfLeadingZeros(h)) / 4);
+        for (int i = position + length - 1 ; i >= position ; i--) {
+            buffer[i] = HEX_DIGITS[(int)(h & 0xF)];
+            h >>>= 4;
+        }
+        position += length;
+    }
+
+    private DxfOutput newLine() throws IOException {
+        ensureCapacity(2);
+        buffer[position++] = '\r';
+        buffer[position++] = '\n';
+        return this;
+    }
+
+    // The buffer is flushed to the file or to the writer, unless the output
+    // is in memory or it has reserved fields which can only be patched in
+    // memory
+    private boolean canFlush() {
+        return channel != null || spill != null || (writer != null && reserved == 0);
+    }
+
+    private void ensureCapacity(int length) throws IOException {
+        if (position + length > buffer.length) {
+            if (spill == null && isInMemory() && reserved == 0 && position + length > SPILL_SIZE) {
+                spill = FileChannel.open(Files.createTempFile("dxf", ".tmp"),
+                        StandardOpenOption.READ,
+                        StandardOpenOption.WRITE,
+                        StandardOpenOption.DELETE_ON_CLOSE);
+            }
+            if (canFlush()) writeBuffer();
+            if (position + length > buffer.length) {
+                buffer = Arrays.copyOf(buffer,
+                        Math.max(2 * buffer.length, position + length));
+            }
+        }
+    }
+
+    // Groups are always written as a whole after ensureCapacity, so that a
+    // flush never splits a multi-byte char
+    private void writeBuffer() throws IOException {
+        if (position > 0) {
+            if (channel != null || spill != null) {
+                FileChannel target = channel != null ? channel : spill;
+                ByteBuffer bb = ByteBuffer.wrap(buffer, 0, position);
+                while (bb.hasRemaining()) target.write(bb);
+            }
+            else {
+                writer.write(new String(buffer, 0, position, charset));
+            }
+            flushed += position;
+            position = 0;
+        }
+    }
+
+    public void flush() throws IOException {
+        if (canFlush()) {
+            writeBuffer();
+            if (writer != null) writer.flush();
+        }
+    }
+
+    public void close() throws IOException {
+        if (channel != null) {
+            writeBuffer();
+            channel.close();
+        }
+        else if (writer != null) {
+            writeBuffer();
+            writer.close();
+        }
+        else if (spill != null) {
+            spill.close();
+            spill = null;
+        }
+    }
+
+}
@@ -44,14 +44,16 @@ public class DxfPOINT extends DxfENTITY {
 
     public DxfPOINT() {super("DEFAULT");}
 
-    public static DxfGroup readEntity(RandomAccessFile raf, 
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, 
                                       FeatureCollection entities) 
                                       throws IOException {
-        Feature feature = new BasicFeature(DxfFile.DXF_SCHEMA);
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
         feature.setAttribute("LTYPE", "BYLAYER");
         feature.setAttribute("THICKNESS", 0.0);
         feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
         double x=Double.NaN, y=Double.NaN, z=Double.NaN;
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
         DxfGroup group;
         while (null != (group = DxfGroup.readGroup(raf))) {
             int code = group.getCode();
@@ -65,12 +67,14 @@ public class DxfPOINT extends DxfENTITY {
             else if (code==10) x = group.getDoubleValue();
             else if (code==20) y = group.getDoubleValue();
             else if (code==30) z = group.getDoubleValue();
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
             //else {}
         }
         if (!Double.isNaN(x) && !Double.isNaN(y)) {
-            GeometryFactory gf = new GeometryFactory(DPM,0);
+            GeometryFactory gf = dxfFile.getGeometryFactory();
             feature.setGeometry(gf.createPoint(new Coordinate(x,y,z)));
             if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
             entities.add(feature);
         }
         return group;
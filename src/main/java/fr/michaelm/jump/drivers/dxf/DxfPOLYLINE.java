@@ -30,14 +30,18 @@ import java.io.IOException;
 import com.vividsolutions.jump.feature.Feature;
 import com.vividsolutions.jump.feature.BasicFeature;
 import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Coordinate;
 import org.locationtech.jts.geom.CoordinateList;
+import org.locationtech.jts.geom.Geometry;
 import org.locationtech.jts.geom.GeometryFactory;
 
 
 /**
  * POLYLINE DXF entity.
  * This class has a static method reading a DXF POLYLINE and adding the new
- * feature to a FeatureCollection
+ * feature to a FeatureCollection.
+ * Arc segments (bulges) are flattened by the DxfArcTessellator of the file.
+ * Polyface meshes and polygon meshes are read as MultiPolygons.
  * @author Michaël Michaud
  */
 // History
@@ -45,7 +49,7 @@ public class DxfPOLYLINE extends DxfENTITY {
 
     public DxfPOLYLINE() {super("DEFAULT");}
 
-    public static DxfGroup readEntity(RandomAccessFile raf, 
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, 
                                       FeatureCollection entities)
                                       throws IOException {
         Feature feature = new BasicFeature(entities.getFeatureSchema());
@@ -55,11 +59,21 @@ public class DxfPOLYLINE extends DxfENTITY {
         feature.setAttribute("THICKNESS", 0.0);
         feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
         //double x=Double.NaN, y=Double.NaN, z=Double.NaN;
+        // bulge of the segment starting at the last vertex read
+        double[] bulge = new double[1];
+        DxfArcTessellator tessellator = dxfFile.getArcTessellator();
+        // mesh flags and vertex counts (M and N for a polygon mesh)
+        int flags = 0;
+        int m = 0, n = 0;
+        DxfMesh mesh = null;
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1, xdataEnd = -1;
         DxfGroup group = DxfFile.ENTITIES;
-        GeometryFactory gf = new GeometryFactory(DPM,0);
+        GeometryFactory gf = dxfFile.getGeometryFactory();
         while (!group.equals(SEQEND)) {
             if (DxfFile.DEBUG) group.print(12);
             int code = group.getCode();
+            if (xdata >= 0 && xdataEnd < 0 && code == 0) xdataEnd = group.getAddress();
             if (code==8) {
                 feature.setAttribute("LAYER", group.getValue());
             }
@@ -73,19 +87,45 @@ public class DxfPOLYLINE extends DxfENTITY {
                 feature.setAttribute("COLOR", group.getIntValue());
             }
             else if (code==70) {
-                if ((group.getIntValue()&1)==1) geomType = "Polygon";
+                flags = group.getIntValue();
+                if ((flags&1)==1) geomType = "Polygon";
+                if ((flags&(16|64))!=0) mesh = new DxfMesh();
+            }
+            else if (code==71) {
+                m = group.getIntValue();
+            }
+            else if (code==72) {
+                n = group.getIntValue();
+            }
+            else if (group.equals(VERTEX) && mesh != null) {
+                group = DxfVERTEX.readEntity(raf, mesh);
+                continue;
             }
             else if (group.equals(VERTEX)) {
-                group = DxfVERTEX.readEntity(raf, coordList);
+                group = DxfVERTEX.readEntity(raf, coordList, tessellator, bulge);
                 continue;
             }
             else if (group.equals(SEQEND)) {
                 continue;
             }
+            else if (code==1001) {
+                if (xdata < 0) xdata = group.getAddress();
+            }
             //else {}
             group = DxfGroup.readGroup(raf);
         }
-        if (geomType.equals("LineString")) {
+        if (mesh != null) {
+            Geometry geometry = (flags&64)==64 ?
+                    mesh.getPolyface(gf) :
+                    mesh.getPolygonMesh(gf, m, n, (flags&1)==1, (flags&32)==32);
+            if (geometry != null) {
+                feature.setGeometry(geometry);
+                if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+                dxfFile.readXData(raf, feature, xdata, xdataEnd);
+                entities.add(feature);
+            }
+        }
+        else if (geomType.equals("LineString")) {
             // Handle cases where coordList does not describe a valid Line
             if (coordList.size() == 1) {
                 feature.setGeometry(gf.createPoint(coordList.getCoordinate(0)));
@@ -98,9 +138,14 @@ public class DxfPOLYLINE extends DxfENTITY {
                 feature.setGeometry(gf.createLineString(coordList.toCoordinateArray()));
             }
             if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, xdataEnd);
             entities.add(feature);
         }
         else if (geomType.equals("Polygon")) {
+            if (coordList.size() > 1) {
+                Coordinate first = coordList.getCoordinate(0);
+                tessellator.addBulge(coordList, first.x, first.y, first.z, bulge[0]);
+            }
             coordList.closeRing();
             // Handle cases where coordList does not describe a valid Polygon
             if (coordList.size() == 1) {
@@ -117,6 +162,7 @@ public class DxfPOLYLINE extends DxfENTITY {
                 feature.setGeometry(gf.createPolygon(gf.createLinearRing(coordList.toCoordinateArray())));
             }
             if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, xdataEnd);
             entities.add(feature);
         }
         //else {}
@@ -0,0 +1,287 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Writer of the parts of a R2000 (AC1015) DXF file which do not exist in a
+ * R12 file : CLASSES and OBJECTS sections, and tables, blocks and their
+ * records with handles and subclass markers.
+ * Tables and blocks use fixed handles. Layers and entities use handles from
+ * the output counter, starting at FIRST_HANDLE.
+ * @author Michaël Michaud
+ */
+public class DxfR2000 {
+
+    // Tables
+    static final String VPORT_TABLE        = "1";
+    static final String LTYPE_TABLE        = "2";
+    static final String LAYER_TABLE        = "3";
+    static final String STYLE_TABLE        = "4";
+    static final String VIEW_TABLE         = "5";
+    static final String UCS_TABLE          = "6";
+    static final String APPID_TABLE        = "7";
+    static final String DIMSTYLE_TABLE     = "8";
+    static final String BLOCK_RECORD_TABLE = "9";
+    // Table records
+    static final String LTYPE_BYBLOCK      = "10";
+    static final String LTYPE_BYLAYER      = "11";
+    static final String LTYPE_CONTINUOUS   = "12";
+    static final String LAYER_0            = "13";
+    static final String STYLE_STANDARD     = "14";
+    static final String APPID_ACAD         = "15";
+    static final String DIMSTYLE_STANDARD  = "16";
+    /** Owner of all the entities written in the ENTITIES section. */
+    public static final String MODEL_SPACE = "17";
+    static final String PAPER_SPACE        = "18";
+    // Blocks
+    static final String MODEL_SPACE_BLOCK  = "19";
+    static final String MODEL_SPACE_ENDBLK = "1A";
+    static final String PAPER_SPACE_BLOCK  = "1B";
+    static final String PAPER_SPACE_ENDBLK = "1C";
+    // Objects
+    static final String ROOT_DICTIONARY    = "1D";
+    static final String GROUP_DICTIONARY   = "1E";
+
+    /** First handle given by the output counter. */
+    public static final long FIRST_HANDLE = 0x20;
+
+    /** Width of the reserved $HANDSEED value. */
+    public static final int HANDSEED_WIDTH = 16;
+
+    private DxfR2000() {}
+
+    public static void writeClasses(DxfOutput out) throws IOException {
+        out.group(0, "SECTION");
+        out.group(2, "CLASSES");
+        out.group(0, "ENDSEC");
+    }
+
+   /**
+    * Write the TABLES section, with one layer for each layer name (and its
+    * "_" counterpart for holes if suffix is true), and one linetype for each
+    * linetype name used by the entities.
+    * Linetypes are declared without dash pattern, as solid lines.
+    */
+    public static void writeTables(DxfOutput out, String[] layerNames,
+                                   Collection<String> linetypes, boolean suffix) throws IOException {
+        Set<String> layers = new LinkedHashSet<>();
+        for (String layerName : layerNames) {
+            if (layerName.length() == 0 || layerName.equals("0")) continue;
+            layers.add(layerName);
+            if (suffix) layers.add(layerName + "_");
+        }
+        // Linetype names are case insensitive
+        Set<String> ltypes = new LinkedHashSet<>();
+        Set<String> keys = new HashSet<>();
+        keys.add("BYBLOCK");
+        keys.add("BYLAYER");
+        keys.add("CONTINUOUS");
+        for (String linetype : linetypes) {
+            if (linetype.length() == 0) continue;
+            if (keys.add(linetype.toUpperCase(Locale.ROOT))) ltypes.add(linetype);
+        }
+        out.group(0, "SECTION");
+        out.group(2, "TABLES");
+
+        table(out, "VPORT", VPORT_TABLE, 0);
+        out.group(0, "ENDTAB");
+
+        table(out, "LTYPE", LTYPE_TABLE, ltypes.size() + 3);
+        ltype(out, "ByBlock", LTYPE_BYBLOCK);
+        ltype(out, "ByLayer", LTYPE_BYLAYER);
+        ltype(out, "Continuous", LTYPE_CONTINUOUS);
+        for (String ltype : ltypes) ltype(out, ltype, null);
+        out.group(0, "ENDTAB");
+
+        table(out, "LAYER", LAYER_TABLE, layers.size() + 1);
+        layer(out, "0", LAYER_0);
+        for (String layer : layers) layer(out, layer, null);
+        out.group(0, "ENDTAB");
+
+        table(out, "STYLE", STYLE_TABLE, 1);
+        record(out, "STYLE", STYLE_STANDARD, STYLE_TABLE, "AcDbTextStyleTableRecord");
+        out.group(2, "Standard");
+        out.group(70, 0);
+        out.group(40, 0.0, 1);
+        out.group(41, 1.0, 1);
+        out.group(50, 0.0, 1);
+        out.group(71, 0);
+        out.group(42, 2.5, 1);
+        out.group(3, "txt");
+        out.group(4, "");
+        out.group(0, "ENDTAB");
+
+        table(out, "VIEW", VIEW_TABLE, 0);
+        out.group(0, "ENDTAB");
+
+        table(out, "UCS", UCS_TABLE, 0);
+        out.group(0, "ENDTAB");
+
+        table(out, "APPID", APPID_TABLE, 1);
+        record(out, "APPID", APPID_ACAD, APPID_TABLE, "AcDbRegAppTableRecord");
+        out.group(2, "ACAD");
+        out.group(70, 0);
+        out.group(0, "ENDTAB");
+
+        table(out, "DIMSTYLE", DIMSTYLE_TABLE, 1);
+        out.group(100, "AcDbDimStyleTable");
+        // DIMSTYLE records use 105 instead of 5 for their handle
+        out.group(0, "DIMSTYLE");
+        out.group(105, DIMSTYLE_STANDARD);
+        out.group(330, DIMSTYLE_TABLE);
+        out.group(100, "AcDbSymbolTableRecord");
+        out.group(100, "AcDbDimStyleTableRecord");
+        out.group(2, "Standard");
+        out.group(70, 0);
+        out.group(0, "ENDTAB");
+
+        table(out, "BLOCK_RECORD", BLOCK_RECORD_TABLE, 2);
+        record(out, "BLOCK_RECORD", MODEL_SPACE, BLOCK_RECORD_TABLE, "AcDbBlockTableRecord");
+        out.group(2, "*Model_Space");
+        record(out, "BLOCK_RECORD", PAPER_SPACE, BLOCK_RECORD_TABLE, "AcDbBlockTableRecord");
+        out.group(2, "*Paper_Space");
+        out.group(0, "ENDTAB");
+
+        out.group(0, "ENDSEC");
+    }
+
+   /**
+    * Write the BLOCKS section, with the model space and paper space blocks.
+    */
+    public static void writeBlocks(DxfOutput out) throws IOException {
+        out.group(0, "SECTION");
+        out.group(2, "BLOCKS");
+        block(out, "*Model_Space", MODEL_SPACE_BLOCK, MODEL_SPACE_ENDBLK, MODEL_SPACE, false);
+        block(out, "*Paper_Space", PAPER_SPACE_BLOCK, PAPER_SPACE_ENDBLK, PAPER_SPACE, true);
+        out.group(0, "ENDSEC");
+    }
+
+   /**
+    * Write the OBJECTS section, with the root dictionary and an empty group
+    * dictionary.
+    */
+    public static void writeObjects(DxfOutput out) throws IOException {
+        out.group(0, "SECTION");
+        out.group(2, "OBJECTS");
+        out.group(0, "DICTIONARY");
+        out.group(5, ROOT_DICTIONARY);
+        out.group(330, "0");
+        out.group(100, "AcDbDictionary");
+        out.group(281, 1);
+        out.group(3, "ACAD_GROUP");
+        out.group(350, GROUP_DICTIONARY);
+        out.group(0, "DICTIONARY");
+        out.group(5, GROUP_DICTIONARY);
+        out.group(330, ROOT_DICTIONARY);
+        out.group(100, "AcDbDictionary");
+        out.group(281, 1);
+        out.group(0, "ENDSEC");
+    }
+
+   /**
+    * Format a $HANDSEED value on HANDSEED_WIDTH chars.
+    */
+    public static String handseed(long handle) {
+        String hex = Long.toHexString(handle).toUpperCase();
+        StringBuilder sb = new StringBuilder(HANDSEED_WIDTH);
+        for (int i = hex.length() ; i < HANDSEED_WIDTH ; i++) sb.append('0');
+        return sb.append(hex).toString();
+    }
+
+    private static void table(DxfOutput out, String name, String handle,
+                              int size) throws IOException {
+        out.group(0, "TABLE");
+        out.group(2, name);
+        out.group(5, handle);
+        out.group(330, "0");
+        out.group(100, "AcDbSymbolTable");
+        out.group(70, size);
+    }
+
+    // Write the beginning of a record. If handle is null, the next handle
+    // of the output is used.
+    private static void record(DxfOutput out, String type, String handle,
+                               String table, String subclass) throws IOException {
+        out.group(0, type);
+        if (handle == null) out.handle(5);
+        else out.group(5, handle);
+        out.group(330, table);
+        out.group(100, "AcDbSymbolTableRecord");
+        out.group(100, subclass);
+    }
+
+    private static void ltype(DxfOutput out, String name, String handle) throws IOException {
+        record(out, "LTYPE", handle, LTYPE_TABLE, "AcDbLinetypeTableRecord");
+        out.group(2, name);
+        out.group(70, 0);
+        out.group(3, name.equals("Continuous") ? "Solid line" : "");
+        out.group(72, 65);
+        out.group(73, 0);
+        out.group(40, 0.0, 1);
+    }
+
+    private static void layer(DxfOutput out, String name, String handle) throws IOException {
+        record(out, "LAYER", handle, LAYER_TABLE, "AcDbLayerTableRecord");
+        out.group(2, name);
+        out.group(70, 0);
+        out.group(62, 7);
+        out.group(6, "Continuous");
+    }
+
+    private static void block(DxfOutput out, String name, String handle,
+                              String endHandle, String owner,
+                              boolean paperSpace) throws IOException {
+        out.group(0, "BLOCK");
+        out.group(5, handle);
+        out.group(330, owner);
+        out.group(100, "AcDbEntity");
+        if (paperSpace) out.group(67, 1);
+        out.group(8, "0");
+        out.group(100, "AcDbBlockBegin");
+        out.group(2, name);
+        out.group(70, 0);
+        out.group(10, 0.0, 1);
+        out.group(20, 0.0, 1);
+        out.group(30, 0.0, 1);
+        out.group(3, name);
+        out.group(1, "");
+        out.group(0, "ENDBLK");
+        out.group(5, endHandle);
+        out.group(330, owner);
+        out.group(100, "AcDbEntity");
+        if (paperSpace) out.group(67, 1);
+        out.group(8, "0");
+        out.group(100, "AcDbBlockEnd");
+    }
+
+}
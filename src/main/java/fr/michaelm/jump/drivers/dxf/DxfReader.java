@@ -33,7 +33,9 @@ import org.locationtech.jts.geom.GeometryFactory;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 
 
 /**
@@ -46,6 +48,9 @@ public class DxfReader implements JUMPReader {
 
     //private DxfFile dxfFile = null;
 
+    // Index by handle of the entities of the last file read (HANDLES option)
+    private DxfHandleIndex handleIndex = null;
+
     /** Creates new DxfReader */
     public DxfReader() {
     }
@@ -77,15 +82,97 @@ public class DxfReader implements JUMPReader {
             throw new IllegalParametersException("Filename must end in '.dxf'");
         }
 
+        // Option to store coordinates outside the java heap (read-only layers)
+        boolean offHeap = booleanOption(dp, "OFF_HEAP_COORDINATES", false);
+
+        // Option to read INSERTs as lightweight features sharing the block
+        // geometry, computed on demand
+        boolean insertInstances = booleanOption(dp, "INSERT_INSTANCES", false);
+
+        // Maximum distance between arcs, circles, ellipses and splines and their
+        // chords
+        double chordTolerance = numberOption(dp, "CHORD_TOLERANCE",
+                DxfArcTessellator.DEFAULT_TOLERANCE).doubleValue();
+
+        // Option to merge the faces (3DFACE, SOLID, TRACE) of each layer into
+        // a single MultiPolygon feature (without XDATA nor HANDLE)
+        boolean mergeFaces = booleanOption(dp, "MERGE_FACES", false);
+
+        // Option to keep the extended entity data (XDATA attribute), and
+        // values of applications mapped to attributes (APPID:index:NAME
+        // separated by commas)
+        boolean xdata = booleanOption(dp, "XDATA", false);
+        List<String> xdataFields = new ArrayList<>();
+        String xdataFieldsProperty = dp.getProperty("XDATA_FIELDS");
+        if (xdataFieldsProperty != null && xdataFieldsProperty.trim().length() > 0) {
+            xdata = true;
+            xdataFields.addAll(Arrays.asList(xdataFieldsProperty.split("[,\\n]")));
+        }
+
+        // Option to add entity handles as a HANDLE attribute, and to index
+        // entities by handle (except merged faces)
+        boolean handles = booleanOption(dp, "HANDLES", false);
+
         //dxfFile = getDXFFile(dxfFileName, dp.getProperty("CompressedFile"));
-        DxfFile dxfFile;
-        GeometryFactory factory = new GeometryFactory();
-        dxfFile = DxfFile.createFromFile(new File(dxfFileName));
+        DxfFile dxfFile = new DxfFile();
+        dxfFile.setHandles(handles);
+        dxfFile.setXData(xdata, xdataFields);
+        dxfFile.setMergeFaces(mergeFaces);
+        dxfFile.setChordTolerance(chordTolerance);
+        dxfFile.setInsertInstances(insertInstances);
+        GeometryFactory factory = offHeap ?
+                new GeometryFactory(DxfENTITY.DPM, 0, new DxfCoordinateArena()) :
+                new GeometryFactory(DxfENTITY.DPM, 0);
+        dxfFile.setGeometryFactory(factory);
+        dxfFile.load(new File(dxfFileName));
         result = dxfFile.read(factory);
+        handleIndex = dxfFile.getHandleIndex();
         System.gc();
         return result;
     }
     
+   /**
+    * Return the value of a boolean option, given as a Boolean or as a
+    * String, or defaultValue if it is not set.
+    */
+    private static boolean booleanOption(DriverProperties dp, String key,
+                                         boolean defaultValue) {
+        Object value = dp.get(key);
+        if (value instanceof Boolean) return (Boolean)value;
+        if (value instanceof String) return Boolean.parseBoolean(value.toString().trim());
+        return defaultValue;
+    }
+
+   /**
+    * Return the value of a numeric option, given as a Number or as a String,
+    * or defaultValue if it is not set.
+    * @throws IllegalParametersException if the value is not a number
+    */
+    private static Number numberOption(DriverProperties dp, String key,
+                                       Number defaultValue) throws IllegalParametersException {
+        Object value = dp.get(key);
+        if (value instanceof Number) return (Number)value;
+        if (!(value instanceof String)) return defaultValue;
+        String s = value.toString().trim();
+        try {
+            return Long.valueOf(s);
+        } catch(NumberFormatException e) {
+            try {
+                return Double.valueOf(s);
+            } catch(NumberFormatException e2) {
+                throw new IllegalParametersException(key + " property is not a number : " + s);
+            }
+        }
+    }
+
+   /**
+    * Return the index by handle of the entities of the last file read, or
+    * null if it has been read without the HANDLES option.
+    */
+    public DxfHandleIndex getHandleIndex() {
+        return handleIndex;
+    }
+
     private Collection<Exception> exceptions;
     public Collection<Exception> getExceptions() {
         if (exceptions == null) exceptions = new ArrayList<>();
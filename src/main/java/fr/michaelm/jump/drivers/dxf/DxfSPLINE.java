@@ -0,0 +1,134 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.RandomAccessFile;
+import java.io.IOException;
+import java.util.Arrays;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.BasicFeature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Coordinate;
+import org.locationtech.jts.geom.CoordinateList;
+import org.locationtech.jts.geom.GeometryFactory;
+
+/**
+ * SPLINE DXF entity.
+ * This class has a static method reading a DXF SPLINE and adding the new
+ * feature to a FeatureCollection. The curve defined by the control points,
+ * the knots and the weights is flattened by the DxfSplineEvaluator of the
+ * file. A spline defined by fit points only is read as a LineString going
+ * through its fit points.
+ * @author Michaël Michaud
+ */
+public class DxfSPLINE extends DxfENTITY {
+
+    public DxfSPLINE() {super("DEFAULT");}
+
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, FeatureCollection entities)
+                                                            throws IOException {
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
+        feature.setAttribute("LTYPE", "BYLAYER");
+        feature.setAttribute("THICKNESS", 0.0);
+        feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
+        int flags = 0;
+        int degree = 3;
+        double[] x = new double[16], y = new double[16], z = new double[16];
+        double[] knots = new double[32], weights = new double[16];
+        int size = 0, knotCount = 0, weightCount = 0;
+        CoordinateList fitPoints = new CoordinateList();
+        double fx = Double.NaN, fy = Double.NaN;
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
+        DxfGroup group;
+        while (null != (group = DxfGroup.readGroup(raf))) {
+            int code = group.getCode();
+            if (code==0) break;
+            if (DxfFile.DEBUG) group.print(12);
+            if (code==8) feature.setAttribute("LAYER", group.getValue());
+            else if (code==6) feature.setAttribute("LTYPE", group.getValue());
+            else if (code==39) feature.setAttribute("THICKNESS", group.getDoubleValue());
+            else if (code==62) feature.setAttribute("COLOR", group.getIntValue());
+            else if (code==70) flags = group.getIntValue();
+            else if (code==71) degree = group.getIntValue();
+            else if (code==10) {
+                if (size == x.length) {
+                    x = Arrays.copyOf(x, 2 * size);
+                    y = Arrays.copyOf(y, 2 * size);
+                    z = Arrays.copyOf(z, 2 * size);
+                }
+                x[size] = group.getDoubleValue();
+                y[size] = Double.NaN;
+                z[size] = Double.NaN;
+                size++;
+            }
+            else if (code==20 && size > 0) y[size-1] = group.getDoubleValue();
+            else if (code==30 && size > 0) z[size-1] = group.getDoubleValue();
+            else if (code==40) {
+                if (knotCount == knots.length) knots = Arrays.copyOf(knots, 2 * knotCount);
+                knots[knotCount++] = group.getDoubleValue();
+            }
+            else if (code==41) {
+                if (weightCount == weights.length) weights = Arrays.copyOf(weights, 2 * weightCount);
+                weights[weightCount++] = group.getDoubleValue();
+            }
+            else if (code==11) fx = group.getDoubleValue();
+            else if (code==21) fy = group.getDoubleValue();
+            else if (code==31 && !Double.isNaN(fx) && !Double.isNaN(fy)) {
+                fitPoints.add(new Coordinate(fx, fy, group.getDoubleValue()), false);
+                fx = fy = Double.NaN;
+            }
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
+            //else {}
+        }
+        GeometryFactory gf = dxfFile.getGeometryFactory();
+        Coordinate[] coords = null;
+        if (size > 0) {
+            coords = dxfFile.getSplineEvaluator().flatten(degree, size,
+                    x, y, z, weights, weightCount, knots, knotCount);
+        }
+        else if (fitPoints.size() > 1) {
+            coords = fitPoints.toCoordinateArray();
+        }
+        if (coords != null) {
+            // closed spline (flag 1) or periodic spline (flag 2)
+            boolean closed = (flags & 3) != 0 && coords[0].equals2D(coords[coords.length-1]);
+            if (closed && coords.length > 3) {
+                coords[coords.length-1] = new Coordinate(coords[0]);
+                feature.setGeometry(gf.createPolygon(gf.createLinearRing(coords)));
+            }
+            else {
+                feature.setGeometry(gf.createLineString(coords));
+            }
+            if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
+            entities.add(feature);
+        }
+        return group;
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.util.Arrays;
+
+import org.locationtech.jts.algorithm.Distance;
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Douglas-Peucker simplification of the vertices of a single linestring or
+ * ring, used to simplify geometries while they are written.
+ * The first and last vertices are always kept, and kept vertices are not
+ * copied.
+ * @author Michaël Michaud
+ */
+public final class DxfSimplifier {
+
+    private DxfSimplifier() {}
+
+   /**
+    * Return the vertices of coords kept by the Douglas-Peucker algorithm
+    * with the given tolerance, or coords itself if every vertex is kept.
+    */
+    public static Coordinate[] simplify(Coordinate[] coords, double tolerance) {
+        if (coords.length < 3 || !(tolerance > 0.0)) return coords;
+        boolean[] kept = new boolean[coords.length];
+        kept[0] = true;
+        kept[coords.length - 1] = true;
+        // sections still to simplify, as pairs of indices
+        int[] stack = new int[64];
+        int top = 0;
+        stack[top++] = 0;
+        stack[top++] = coords.length - 1;
+        int size = 2;
+        while (top > 0) {
+            int end = stack[--top];
+            int start = stack[--top];
+            double maxDistance = -1.0;
+            int farthest = -1;
+            for (int i = start + 1 ; i < end ; i++) {
+                double distance = Distance.pointToSegment(coords[i], coords[start], coords[end]);
+                if (distance > maxDistance) {
+                    maxDistance = distance;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0 || maxDistance <= tolerance) continue;
+            kept[farthest] = true;
+            size++;
+            if (top + 4 > stack.length) stack = Arrays.copyOf(stack, 2 * stack.length);
+            stack[top++] = start;
+            stack[top++] = farthest;
+            stack[top++] = farthest;
+            stack[top++] = end;
+        }
+        if (size == coords.length) return coords;
+        Coordinate[] result = new Coordinate[size];
+        for (int i = 0, j = 0 ; i < coords.length ; i++) {
+            if (kept[i]) result[j++] = coords[i];
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,244 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Evaluation and flattening of NURBS curves (rational or not B-splines).
+ * Each knot span is evaluated with de Boor's algorithm and subdivided until
+ * the distance between the middle of each piece of curve and its chord is
+ * under a tolerance.
+ * Control points, knots and intermediate results are kept in work arrays
+ * which only grow, so that flattening many splines does not allocate
+ * anything but the resulting coordinates.
+ * An evaluator is not thread-safe.
+ * @author Michaël Michaud
+ */
+public class DxfSplineEvaluator {
+
+    // Maximum subdivision depth of a piece of a knot span
+    private static final int MAX_DEPTH = 12;
+
+    private final double tolerance;
+
+    private int degree;
+    private int size;
+    private boolean rational;
+    private boolean hasZ;
+
+    // Control points (weighted by their weight for rational curves) and knots
+    private double[] cx = new double[16];
+    private double[] cy = new double[16];
+    private double[] cz = new double[16];
+    private double[] cw = new double[16];
+    private double[] knots = new double[32];
+
+    // de Boor triangle
+    private double[] dx = new double[4];
+    private double[] dy = new double[4];
+    private double[] dz = new double[4];
+    private double[] dw = new double[4];
+
+    // Result point of evaluate
+    private double px, py, pz;
+
+    // Flattened curve, as interleaved x, y, z
+    private double[] result = new double[3 * 64];
+    private int resultSize;
+
+    public DxfSplineEvaluator(double tolerance) {
+        this.tolerance = tolerance;
+    }
+
+    public double getTolerance() {
+        return tolerance;
+    }
+
+   /**
+    * Flatten the spline of degree degree defined by size control points
+    * (x, y, z), weights (null or shorter than size for a non rational curve)
+    * and knots. If the number of knots is not size + degree + 1, a clamped
+    * uniform knot vector is used.
+    * @return the coordinates of the flattened curve, or null if the curve
+    * cannot be evaluated
+    */
+    public Coordinate[] flatten(int degree, int size,
+                                double[] x, double[] y, double[] z,
+                                double[] weights, int weightCount,
+                                double[] knotValues, int knotCount) {
+        if (degree < 1 || size <= degree) return null;
+        setControlPoints(degree, size, x, y, z, weights, weightCount);
+        setKnots(knotValues, knotCount);
+        resultSize = 0;
+        for (int span = degree ; span < size ; span++) {
+            double start = knots[span];
+            double end = knots[span + 1];
+            if (!(end > start)) continue;
+            if (resultSize == 0) {
+                evaluate(span, start);
+                add(px, py, pz);
+            }
+            // several pieces per span, so that an inflexion of the curve
+            // does not hide the distance between the curve and the chord
+            double x0 = px, y0 = py, z0 = pz;
+            for (int i = 1 ; i <= degree ; i++) {
+                double u = start + (end - start) * i / degree;
+                evaluate(span, u);
+                double x1 = px, y1 = py, z1 = pz;
+                subdivide(span, start + (end - start) * (i - 1) / degree, u,
+                          x0, y0, z0, x1, y1, z1, 0);
+                add(x1, y1, z1);
+                x0 = x1; y0 = y1; z0 = z1;
+            }
+        }
+        if (resultSize < 2) return null;
+        Coordinate[] coords = new Coordinate[resultSize];
+        for (int i = 0 ; i < resultSize ; i++) {
+            coords[i] = new Coordinate(result[3 * i], result[3 * i + 1],
+                    hasZ ? result[3 * i + 2] : Double.NaN);
+        }
+        return coords;
+    }
+
+    // Add the points of the curve between u0 (excluded) and u1 (excluded)
+    private void subdivide(int span, double u0, double u1,
+                           double x0, double y0, double z0,
+                           double x1, double y1, double z1, int depth) {
+        if (depth >= MAX_DEPTH) return;
+        double um = 0.5 * (u0 + u1);
+        evaluate(span, um);
+        double xm = px, ym = py, zm = pz;
+        if (distance(xm, ym, x0, y0, x1, y1) <= tolerance) return;
+        subdivide(span, u0, um, x0, y0, z0, xm, ym, zm, depth + 1);
+        add(xm, ym, zm);
+        subdivide(span, um, u1, xm, ym, zm, x1, y1, z1, depth + 1);
+    }
+
+    // Distance from point (x, y) to segment (x0, y0, x1, y1)
+    private static double distance(double x, double y,
+                                   double x0, double y0, double x1, double y1) {
+        double vx = x1 - x0, vy = y1 - y0;
+        double length2 = vx * vx + vy * vy;
+        double r = length2 == 0.0 ? 0.0 : ((x - x0) * vx + (y - y0) * vy) / length2;
+        if (r < 0.0) r = 0.0;
+        else if (r > 1.0) r = 1.0;
+        return Math.hypot(x - x0 - r * vx, y - y0 - r * vy);
+    }
+
+    private void setControlPoints(int degree, int size,
+                                  double[] x, double[] y, double[] z,
+                                  double[] weights, int weightCount) {
+        this.degree = degree;
+        this.size = size;
+        if (cx.length < size) {
+            int length = Math.max(size, 2 * cx.length);
+            cx = new double[length];
+            cy = new double[length];
+            cz = new double[length];
+            cw = new double[length];
+        }
+        if (dx.length < degree + 1) {
+            dx = new double[degree + 1];
+            dy = new double[degree + 1];
+            dz = new double[degree + 1];
+            dw = new double[degree + 1];
+        }
+        rational = false;
+        hasZ = !Double.isNaN(z[0]);
+        if (weights != null && weightCount >= size) {
+            for (int i = 0 ; i < size ; i++) {
+                if (weights[i] != 1.0) rational = true;
+            }
+        }
+        for (int i = 0 ; i < size ; i++) {
+            double w = rational ? weights[i] : 1.0;
+            double zi = Double.isNaN(z[i]) ? 0.0 : z[i];
+            cx[i] = x[i] * w;
+            cy[i] = y[i] * w;
+            cz[i] = zi * w;
+            cw[i] = w;
+        }
+    }
+
+    private void setKnots(double[] knotValues, int knotCount) {
+        int count = size + degree + 1;
+        if (knots.length < count) knots = new double[Math.max(count, 2 * knots.length)];
+        if (knotValues != null && knotCount == count) {
+            System.arraycopy(knotValues, 0, knots, 0, count);
+        }
+        else {
+            // clamped uniform knot vector
+            for (int i = 0 ; i < count ; i++) {
+                if (i <= degree) knots[i] = 0.0;
+                else if (i >= size) knots[i] = size - degree;
+                else knots[i] = i - degree;
+            }
+        }
+    }
+
+    // Evaluate the curve at u, in knot span [knots[span], knots[span+1]]
+    // with de Boor's algorithm
+    private void evaluate(int span, double u) {
+        int p = degree;
+        for (int j = 0 ; j <= p ; j++) {
+            int i = j + span - p;
+            dx[j] = cx[i];
+            dy[j] = cy[i];
+            dz[j] = cz[i];
+            dw[j] = cw[i];
+        }
+        for (int r = 1 ; r <= p ; r++) {
+            for (int j = p ; j >= r ; j--) {
+                double k0 = knots[j + span - p];
+                double k1 = knots[j + 1 + span - r];
+                double alpha = k1 == k0 ? 0.0 : (u - k0) / (k1 - k0);
+                double beta = 1.0 - alpha;
+                dx[j] = beta * dx[j - 1] + alpha * dx[j];
+                dy[j] = beta * dy[j - 1] + alpha * dy[j];
+                dz[j] = beta * dz[j - 1] + alpha * dz[j];
+                dw[j] = beta * dw[j - 1] + alpha * dw[j];
+            }
+        }
+        double w = rational ? dw[p] : 1.0;
+        px = dx[p] / w;
+        py = dy[p] / w;
+        pz = dz[p] / w;
+    }
+
+    private void add(double x, double y, double z) {
+        if (result.length < 3 * (resultSize + 1)) {
+            double[] array = new double[2 * result.length];
+            System.arraycopy(result, 0, array, 0, 3 * resultSize);
+            result = array;
+        }
+        result[3 * resultSize] = x;
+        result[3 * resultSize + 1] = y;
+        result[3 * resultSize + 2] = z;
+        resultSize++;
+    }
+
+}
@@ -0,0 +1,323 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.vividsolutions.jump.feature.Feature;
+import com.vividsolutions.jump.feature.FeatureCollection;
+import org.locationtech.jts.geom.Envelope;
+
+/**
+ * Writes features into several DXF files (name_0001.dxf, name_0002.dxf...)
+ * instead of a single one.
+ * <p>
+ * Files are either limited in size (number of bytes or number of features),
+ * and written one after the other in a single pass over the features, or
+ * they contain the features of the cells of a square grid (the center of
+ * the feature envelope decides of its cell), and are written concurrently.
+ * Each file has its own header extents and the whole LAYER table.
+ * </p>
+ * @author Michaël Michaud
+ */
+public class DxfSplitter {
+
+    // Room left for the end of the file (and for the handles of the tables
+    // of a R2000 file) when the size of a part is limited
+    private static final long END_SIZE = 1 << 13;
+
+    private final File file;
+    private DxfOutput options;
+    private long maxBytes = 0L;
+    private int maxFeatures = 0;
+    private double tileSize = 0.0;
+
+   /**
+    * Create a splitter writing files named after file.
+    */
+    public DxfSplitter(File file) {
+        this.file = file;
+        this.options = new DxfOutput();
+    }
+
+   /**
+    * Set the output whose export options and code page are used by the
+    * files.
+    */
+    public void setOptions(DxfOutput options) {
+        this.options = options;
+    }
+
+   /**
+    * Start a new file before a file gets larger than maxBytes (0 = no
+    * limit). A single feature larger than the previous ones can still make
+    * a file exceed this limit.
+    */
+    public void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+   /**
+    * Start a new file after maxFeatures features (0 = no limit).
+    */
+    public void setMaxFeatures(int maxFeatures) {
+        this.maxFeatures = maxFeatures;
+    }
+
+   /**
+    * Write the features of each tileSize x tileSize cell of a grid anchored
+    * at 0,0 in its own file (0 = no grid). Size limits are ignored.
+    */
+    public void setTileSize(double tileSize) {
+        this.tileSize = tileSize;
+    }
+
+   /**
+    * Return true if one of the split options is set.
+    */
+    public boolean isSplit() {
+        return maxBytes > 0L || maxFeatures > 0 || tileSize > 0.0;
+    }
+
+   /**
+    * Return the file of part number n (starting at 1).
+    */
+    public File getPart(int n) {
+        String name = file.getName();
+        int dot = name.lastIndexOf('.');
+        String extension = dot < 0 ? "" : name.substring(dot);
+        if (dot >= 0) name = name.substring(0, dot);
+        return new File(file.getAbsoluteFile().getParentFile(),
+                name + "_" + String.format("%04d", n) + extension);
+    }
+
+   /**
+    * Write collections into part files, as {@link DxfFile#write(List,
+    * String[], String[], DxfOutput, boolean, int)} would write them into a
+    * single file. threads is the number of tiles written concurrently.
+    * @return the files written
+    */
+    public List<File> write(List<FeatureCollection> collections, String[] defaultLayers,
+                            String[] layerNames, boolean suffix, int threads) throws IOException {
+        DxfAttributePlan[] plans = new DxfAttributePlan[collections.size()];
+        for (int i = 0 ; i < plans.length ; i++) {
+            plans[i] = DxfAttributePlan.get(collections.get(i).getFeatureSchema());
+        }
+        if (tileSize > 0.0) {
+            return writeTiles(collections, plans, defaultLayers, layerNames, suffix, threads);
+        }
+        List<File> files = new ArrayList<>();
+        Part part = null;
+        try {
+            long largest = 0L;
+            for (int i = 0 ; i < collections.size() ; i++) {
+                for (Feature feature : collections.get(i).getFeatures()) {
+                    if (part != null && isFull(part, largest)) {
+                        part.end();
+                        part.close();
+                        part = null;
+                    }
+                    if (part == null) {
+                        files.add(getPart(files.size() + 1));
+                        part = new Part(files.get(files.size() - 1), "part " + files.size(),
+                                        layerNames, suffix);
+                    }
+                    long position = part.entities.getPosition();
+                    DxfFile.writeEntity(feature, plans[i], defaultLayers[i], suffix, part.entities);
+                    largest = Math.max(largest, part.entities.getPosition() - position);
+                    part.count++;
+                }
+            }
+            // an empty export still has one (empty) part
+            if (part == null) {
+                files.add(getPart(1));
+                part = new Part(files.get(0), "part 1", layerNames, suffix);
+            }
+            part.end();
+        } finally {
+            if (part != null) part.close();
+        }
+        return files;
+    }
+
+    private boolean isFull(Part part, long largest) throws IOException {
+        return (maxFeatures > 0 && part.count >= maxFeatures) ||
+               (maxBytes > 0L && part.size() + largest + END_SIZE > maxBytes);
+    }
+
+    // Features are sorted by tile in a first pass, keeping only their
+    // indices, and tiles are written by a pool of threads
+    private List<File> writeTiles(final List<FeatureCollection> collections,
+                                  final DxfAttributePlan[] plans, final String[] defaultLayers,
+                                  final String[] layerNames, final boolean suffix,
+                                  int threads) throws IOException {
+        final List<List<Feature>> lists = new ArrayList<>();
+        // tiles sorted by row, then by column
+        Map<Long,Tile> tiles = new TreeMap<>(Long::compareUnsigned);
+        for (int i = 0 ; i < collections.size() ; i++) {
+            List<Feature> features = collections.get(i).getFeatures();
+            lists.add(features);
+            for (int j = 0 ; j < features.size() ; j++) {
+                Envelope env = features.get(j).getGeometry().getEnvelopeInternal();
+                // empty geometries are not written
+                if (env.isNull()) continue;
+                Long key = tile(env);
+                Tile tile = tiles.get(key);
+                if (tile == null) {
+                    tile = new Tile();
+                    tiles.put(key, tile);
+                }
+                tile.add(i, j);
+            }
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<File>> results = new ArrayList<>();
+        try {
+            int n = 0;
+            for (Map.Entry<Long,Tile> entry : tiles.entrySet()) {
+                final File part = getPart(++n);
+                final Tile tile = entry.getValue();
+                long key = entry.getKey();
+                final String comment = "tile " + ((int)key ^ Integer.MIN_VALUE) +
+                        " " + ((int)(key >>> 32) ^ Integer.MIN_VALUE);
+                results.add(executor.submit(new Callable<File>() {
+                    public File call() throws IOException {
+                        try (Part dxf = new Part(part, comment, layerNames, suffix)) {
+                            for (int k = 0 ; k < tile.size ; k++) {
+                                int i = (int)(tile.refs[k] >>> 32);
+                                Feature feature = lists.get(i).get((int)tile.refs[k]);
+                                DxfFile.writeEntity(feature, plans[i], defaultLayers[i], suffix, dxf.entities);
+                            }
+                            dxf.end();
+                        }
+                        return part;
+                    }
+                }));
+            }
+            List<File> files = new ArrayList<>();
+            for (Future<File> result : results) {
+                files.add(DxfFile.getResult(result));
+            }
+            return files;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // Row and column of the tile containing the center of env, as a key
+    // sorted by row, then by column (with unsigned comparison)
+    private long tile(Envelope env) {
+        int column = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE,
+                Math.floor((env.getMinX() + env.getMaxX()) / 2.0 / tileSize)));
+        int row = (int)Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE,
+                Math.floor((env.getMinY() + env.getMaxY()) / 2.0 / tileSize)));
+        return ((long)(row ^ Integer.MIN_VALUE) << 32) |
+               ((column ^ Integer.MIN_VALUE) & 0xFFFFFFFFL);
+    }
+
+    // A part file being written. Its entities are written directly into the
+    // file, or into a buffer copied after the header when the header must
+    // declare their linetypes (see DxfFile.isHeaderDeferred).
+    private class Part implements Closeable {
+        final DxfOutput out;
+        final DxfOutput entities;
+        final String comment;
+        final String[] layerNames;
+        final boolean suffix;
+        final long[] reserved;
+        int count = 0;
+        // Size of the header written before the buffered entities, measured
+        // again when a new linetype is used
+        long startSize = 0L;
+        int linetypes = -1;
+
+        Part(File file, String comment, String[] layerNames, boolean suffix) throws IOException {
+            this.out = options.createFile(file);
+            this.comment = comment;
+            this.layerNames = layerNames;
+            this.suffix = suffix;
+            if (DxfFile.isHeaderDeferred(out)) {
+                entities = out.createBuffer();
+                reserved = null;
+            }
+            else {
+                entities = out;
+                reserved = DxfFile.writeStart(out, comment, null, layerNames,
+                        Collections.<String>emptySet(), suffix);
+            }
+        }
+
+        // Size of the file without its end
+        long size() throws IOException {
+            if (reserved != null) return out.getPosition();
+            if (entities.getLinetypes().size() != linetypes) {
+                DxfOutput start = out.createBuffer();
+                DxfFile.writeStart(start, comment, entities.getExtents(), layerNames,
+                        entities.getLinetypes(), suffix);
+                startSize = start.getPosition();
+                linetypes = entities.getLinetypes().size();
+            }
+            return startSize + entities.getPosition();
+        }
+
+        void end() throws IOException {
+            if (reserved != null) DxfFile.writeEnd(out, reserved);
+            else DxfFile.writeFile(out, comment, entities, layerNames, suffix);
+        }
+
+        public void close() throws IOException {
+            try {
+                if (entities != out) entities.close();
+            } finally {
+                out.close();
+            }
+        }
+    }
+
+    // Features of a tile, as collection index and feature index pairs
+    private static class Tile {
+        long[] refs = new long[16];
+        int size = 0;
+
+        void add(int collection, int feature) {
+            if (size == refs.length) refs = Arrays.copyOf(refs, 2 * size);
+            refs[size++] = ((long)collection << 32) | feature;
+        }
+    }
+
+}
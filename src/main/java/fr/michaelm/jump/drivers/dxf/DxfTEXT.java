@@ -46,10 +46,10 @@ public class DxfTEXT extends DxfENTITY {
 
     public DxfTEXT() {super("DEFAULT");}
 
-    public static DxfGroup readEntity(RandomAccessFile raf, 
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfFile dxfFile, 
                                       FeatureCollection entities) 
                                       throws IOException {
-        Feature feature = new BasicFeature(DxfFile.DXF_SCHEMA);
+        Feature feature = new BasicFeature(entities.getFeatureSchema());
         feature.setAttribute("LTYPE", "BYLAYER");
         feature.setAttribute("THICKNESS", 0.0);
         feature.setAttribute("COLOR", 256); // equivalent to BYLAYER
@@ -58,8 +58,10 @@ public class DxfTEXT extends DxfENTITY {
         feature.setAttribute("TEXT_ROTATION", 0.0);
         feature.setAttribute("TEXT_STYLE", "STANDARD");
         double x=Double.NaN, y=Double.NaN, z=Double.NaN;
+        // address of the extended entity data (XDATA), if any
+        long xdata = -1;
         DxfGroup group;
-        GeometryFactory gf = new GeometryFactory(DPM,0);
+        GeometryFactory gf = dxfFile.getGeometryFactory();
         while (null != (group = DxfGroup.readGroup(raf))) {
             int code = group.getCode();
             if (code == 0) break;
@@ -75,11 +77,13 @@ public class DxfTEXT extends DxfENTITY {
             else if (code==40) feature.setAttribute("TEXT_HEIGHT", group.getDoubleValue());
             else if (code==50) feature.setAttribute("TEXT_ROTATION", group.getDoubleValue());
             else if (code==7) feature.setAttribute("TEXT_STYLE", group.getValue());
+            else if (code==1001 && xdata < 0) xdata = group.getAddress();
             //else {}
         }
         if (!Double.isNaN(x) && !Double.isNaN(y)) {
             feature.setGeometry(gf.createPoint(new Coordinate(x,y,z)));
             if (DxfFile.DEBUG) System.out.println("        " + feature.getString("LAYER") + " : " + feature.getGeometry());
+            dxfFile.readXData(raf, feature, xdata, group.getAddress());
             entities.add(feature);
         }
         return group;
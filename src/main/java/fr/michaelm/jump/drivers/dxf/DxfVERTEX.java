@@ -43,7 +43,22 @@ public class DxfVERTEX extends DxfENTITY {
     public static DxfGroup readEntity(RandomAccessFile raf, 
                                       CoordinateList coordList)
                                       throws NumberFormatException, IOException {
+        return readEntity(raf, coordList, null, new double[1]);
+    }
+
+   /**
+    * Read a VERTEX and add it to coordList. If tessellator is not null, the
+    * arc going from the previous vertex to this one is added before, using
+    * the bulge of the previous vertex given in bulge[0]. bulge[0] is then
+    * replaced by the bulge of this vertex.
+    */
+    public static DxfGroup readEntity(RandomAccessFile raf,
+                                      CoordinateList coordList,
+                                      DxfArcTessellator tessellator,
+                                      double[] bulge)
+                                      throws NumberFormatException, IOException {
         //Coordinate coord;
+        double b = 0.0;
         double x=Double.NaN, y=Double.NaN, z=Double.NaN;
         DxfGroup group;
         int code;
@@ -52,11 +67,44 @@ public class DxfVERTEX extends DxfENTITY {
             if (code==10) x = group.getDoubleValue();
             else if (code==20) y = group.getDoubleValue();
             else if (code==30) z = group.getDoubleValue();
+            else if (code==42) b = group.getDoubleValue();
             //else {}
         }
         if (!Double.isNaN(x) && !Double.isNaN(y)) {
             if (DxfFile.DEBUG) System.out.println("            " + new Coordinate(x,y,z));
+            if (tessellator != null) tessellator.addBulge(coordList, x, y, z, bulge[0]);
             coordList.add(new Coordinate(x,y,z), true);
+            bulge[0] = b;
+        }
+        return group;
+    }
+
+   /**
+    * Read a VERTEX of a polyface mesh or of a polygon mesh. Face records
+    * (flag 128 without flag 64) are added to mesh as faces, other vertices
+    * as vertices.
+    */
+    public static DxfGroup readEntity(RandomAccessFile raf, DxfMesh mesh)
+                                      throws NumberFormatException, IOException {
+        double x=Double.NaN, y=Double.NaN, z=Double.NaN;
+        int flags = 0;
+        int[] indices = new int[4];
+        DxfGroup group;
+        int code;
+        while (null != (group = DxfGroup.readGroup(raf)) &&
+                  0 != (code = group.getCode())) {
+            if (code==10) x = group.getDoubleValue();
+            else if (code==20) y = group.getDoubleValue();
+            else if (code==30) z = group.getDoubleValue();
+            else if (code==70) flags = group.getIntValue();
+            else if (code>=71 && code<=74) indices[code-71] = group.getIntValue();
+            //else {}
+        }
+        if ((flags & 128) == 128 && (flags & 64) == 0) {
+            mesh.addFace(indices[0], indices[1], indices[2], indices[3]);
+        }
+        else if (!Double.isNaN(x) && !Double.isNaN(y)) {
+            mesh.addVertex(x, y, z);
         }
         return group;
     }
@@ -30,6 +30,9 @@ import com.vividsolutions.jump.io.DriverProperties;
 import com.vividsolutions.jump.io.IllegalParametersException;
 
 import java.io.*;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
 
 
 /**
@@ -53,6 +56,22 @@ public class DxfWriter implements JUMPWriter {
      */
     public void write(FeatureCollection featureCollection, DriverProperties dp)
                                   throws Exception {
+        write(Collections.singletonList(featureCollection), null, dp);
+    }
+
+    /**
+     * Write several feature collections (e.g. several OpenJUMP layers) to a
+     * single DXF file (or to several parts if it is split).
+     *
+     * @param collections collections to write, one after the other
+     * @param defaultLayers DXF layer of the features of each collection
+     *        without LAYER attribute, or null to use the first name of the
+     *        LAYER_NAME property
+     * @param dp 'OutputFile' or 'DefaultValue' to specify where to write,
+     *        and export options
+     */
+    public void write(List<FeatureCollection> collections, String[] defaultLayers,
+                      DriverProperties dp) throws Exception {
         String dxfFileName;
         String fname;
         int loc;
@@ -76,13 +95,42 @@ public class DxfWriter implements JUMPWriter {
         // Check if the writer has to create layers with "_" suffix for layers with holes
         // Warning : using getProperty instead of get return null
         // because SUFFIX is not a String
-        boolean suffix = true;
-        Object suffixObject = dp.get("SUFFIX");
-        if (suffixObject != null) {
-            if (suffixObject instanceof Boolean) suffix = (Boolean)suffixObject;
-            else if (suffixObject instanceof String) suffix = Boolean.parseBoolean(suffixObject.toString());
-        }
+        boolean suffix = booleanOption(dp, "SUFFIX", true);
         
+        // Number of threads used to format entities (1 = sequential)
+        int threads = numberOption(dp, "THREADS", 1).intValue();
+        if (threads < 1) threads = Runtime.getRuntime().availableProcessors();
+
+        // Write linestrings and polygon rings as LWPOLYLINE (R2000 file, with
+        // handles, even if R2000 is not set)
+        boolean lwPolyline = booleanOption(dp, "LWPOLYLINE", false);
+
+        // Write a complete R2000 file, with handles
+        boolean r2000 = booleanOption(dp, "R2000", false);
+
+        // Number of decimals of coordinates. If set, consecutive vertices
+        // equal at this precision are written once
+        int precision = numberOption(dp, "PRECISION", -1).intValue();
+
+        // Simplification tolerance of linestrings and rings (0 = none), and
+        // topology-preserving simplification of each feature geometry
+        double simplify = numberOption(dp, "SIMPLIFY", 0.0).doubleValue();
+        boolean simplifyTopology = booleanOption(dp, "SIMPLIFY_TOPOLOGY", false);
+
+        // DXF layer used for the features of each collection without LAYER
+        // attribute
+        if (defaultLayers == null) {
+            defaultLayers = new String[collections.size()];
+            Arrays.fill(defaultLayers, layerNames[0]);
+        }
+
+        // Code page of non-ASCII strings (ANSI_1252 by default)
+        String codePage = DxfOutput.DEFAULT_CODE_PAGE;
+        Object codePageObject = dp.get("CODEPAGE");
+        if (codePageObject != null && codePageObject.toString().trim().length() > 0) {
+            codePage = codePageObject.toString().trim();
+        }
+
         loc = dxfFileName.lastIndexOf(File.separatorChar);
         fname = dxfFileName.substring(loc + 1); // ie. "/data1/hills.dxf" -> "hills.dxf"
         loc = fname.lastIndexOf(".");
@@ -90,9 +138,62 @@ public class DxfWriter implements JUMPWriter {
             throw new IllegalParametersException("Filename must end in '.dxf'");
         }
 
-        FileWriter fw = new FileWriter(dxfFileName);
-        DxfFile.write(featureCollection, layerNames, fw, 2, suffix);
-        fw.close();
+        // Split the export into several files (name_0001.dxf, name_0002.dxf...)
+        // limited in size, or containing the features of a grid cell
+        DxfSplitter splitter = new DxfSplitter(new File(dxfFileName));
+        splitter.setMaxBytes(numberOption(dp, "SPLIT_BYTES", 0L).longValue());
+        splitter.setMaxFeatures(numberOption(dp, "SPLIT_FEATURES", 0).intValue());
+        splitter.setTileSize(numberOption(dp, "SPLIT_TILE", 0.0).doubleValue());
+
+        // In-memory output holding the options of the parts
+        DxfOutput out = splitter.isSplit() ?
+                new DxfOutput(codePage) : new DxfOutput(new File(dxfFileName), codePage);
+        out.setLwPolyline(lwPolyline);
+        out.setR2000(r2000 || lwPolyline);
+        if (precision >= 0) out.setPrecision(precision);
+        out.setSimplifyTolerance(simplify);
+        out.setTopologyPreserving(simplifyTopology);
+        if (splitter.isSplit()) {
+            splitter.setOptions(out);
+            splitter.write(collections, defaultLayers, layerNames, suffix, threads);
+        }
+        else {
+            DxfFile.write(collections, defaultLayers, layerNames, out, suffix, threads);
+        }
     }
     
+   /**
+    * Return the value of a boolean option, given as a Boolean or as a
+    * String, or defaultValue if it is not set.
+    */
+    private static boolean booleanOption(DriverProperties dp, String key,
+                                         boolean defaultValue) {
+        Object value = dp.get(key);
+        if (value instanceof Boolean) return (Boolean)value;
+        if (value instanceof String) return Boolean.parseBoolean(value.toString().trim());
+        return defaultValue;
+    }
+
+   /**
+    * Return the value of a numeric option, given as a Number or as a String,
+    * or defaultValue if it is not set.
+    * @throws IllegalParametersException if the value is not a number
+    */
+    private static Number numberOption(DriverProperties dp, String key,
+                                       Number defaultValue) throws IllegalParametersException {
+        Object value = dp.get(key);
+        if (value instanceof Number) return (Number)value;
+        if (!(value instanceof String)) return defaultValue;
+        String s = value.toString().trim();
+        try {
+            return Long.valueOf(s);
+        } catch(NumberFormatException e) {
+            try {
+                return Double.valueOf(s);
+            } catch(NumberFormatException e2) {
+                throw new IllegalParametersException(key + " property is not a number : " + s);
+            }
+        }
+    }
+
 }
@@ -0,0 +1,156 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.locationtech.jts.geom.Coordinate;
+
+/**
+ * Extended entity data (XDATA) of an entity.
+ * XDATA groups (codes 1000 to 1071, each application starting with a 1001
+ * group naming an APPID) are kept as the raw bytes read from the file, in
+ * a slice of a byte array shared by many entities. They are only decoded
+ * when values are asked for.
+ * Values are decoded as String (1000, 1003, 1004, 1005), Coordinate (1010
+ * to 1013), Double (1040 to 1042) or Integer (1070, 1071). Control strings
+ * (1002) are skipped.
+ * @author Michaël Michaud
+ */
+public final class DxfXData {
+
+    private final byte[] bytes;
+    private final int offset;
+    private final int length;
+
+    public DxfXData(byte[] bytes, int offset, int length) {
+        this.bytes = bytes;
+        this.offset = offset;
+        this.length = length;
+    }
+
+   /**
+    * Return the names of the applications having data in this XDATA.
+    */
+    public List<String> getApplications() {
+        List<String> applications = new ArrayList<>();
+        Cursor cursor = new Cursor();
+        while (cursor.next()) {
+            if (cursor.code == 1001) applications.add(cursor.value);
+        }
+        return applications;
+    }
+
+   /**
+    * Return the values of application, or an empty list if this XDATA has
+    * no data for application.
+    */
+    public List<Object> getValues(String application) {
+        List<Object> values = null;
+        Cursor cursor = new Cursor();
+        double x = Double.NaN, y = Double.NaN;
+        while (cursor.next()) {
+            int code = cursor.code;
+            if (code == 1001) {
+                if (values != null) break;
+                if (cursor.value.equals(application)) values = new ArrayList<>();
+            }
+            else if (values == null || code == 1002) {}
+            else if (code >= 1010 && code <= 1013) x = cursor.doubleValue();
+            else if (code >= 1020 && code <= 1023) y = cursor.doubleValue();
+            else if (code >= 1030 && code <= 1033) {
+                values.add(new Coordinate(x, y, cursor.doubleValue()));
+            }
+            else if (code >= 1040 && code <= 1042) values.add(cursor.doubleValue());
+            else if (code == 1070 || code == 1071) values.add(cursor.intValue());
+            else values.add(cursor.value);
+        }
+        return values == null ? Collections.emptyList() : values;
+    }
+
+   /**
+    * Return the index-th value of application, or null if there is no such
+    * value.
+    */
+    public Object getValue(String application, int index) {
+        List<Object> values = getValues(application);
+        return index >= 0 && index < values.size() ? values.get(index) : null;
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (String application : getApplications()) {
+            if (sb.length() > 0) sb.append("; ");
+            sb.append(application).append(':');
+            for (Object value : getValues(application)) sb.append(' ').append(value);
+        }
+        return sb.toString();
+    }
+
+    // Reads groups from the slice, one line for the code and one line for
+    // the value, chars being decoded as by RandomAccessFile.readLine
+    private final class Cursor {
+        private int position = offset;
+        int code;
+        String value;
+
+        boolean next() {
+            String codeLine = line();
+            String valueLine = line();
+            if (codeLine == null || valueLine == null) return false;
+            try {
+                code = Integer.parseInt(codeLine.trim());
+            } catch(NumberFormatException e) {
+                return false;
+            }
+            value = valueLine;
+            return true;
+        }
+
+        double doubleValue() {
+            return Double.parseDouble(value.trim());
+        }
+
+        int intValue() {
+            return Integer.parseInt(value.trim());
+        }
+
+        private String line() {
+            int end = offset + length;
+            if (position >= end) return null;
+            int start = position;
+            while (position < end && bytes[position] != '\n' && bytes[position] != '\r') position++;
+            char[] chars = new char[position - start];
+            for (int i = 0 ; i < chars.length ; i++) chars[i] = (char)(bytes[start + i] & 0xFF);
+            if (position < end && bytes[position] == '\r') position++;
+            if (position < end && bytes[position] == '\n') position++;
+            return new String(chars);
+        }
+    }
+
+}
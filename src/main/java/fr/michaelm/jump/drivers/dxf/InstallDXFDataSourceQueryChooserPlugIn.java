@@ -82,6 +82,11 @@ public class InstallDXFDataSourceQueryChooserPlugIn extends InstallStandardDataS
             "dxf",
             context.getWorkbenchContext(),
             DXFFileReaderWriter.class);
+        try {
+            new SaveLayersAsDxfPlugIn().initialize(context);
+        } catch(Exception e) {
+            e.printStackTrace();
+        }
     }
 
 }
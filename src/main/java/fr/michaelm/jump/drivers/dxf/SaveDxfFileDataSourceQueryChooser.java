@@ -28,6 +28,7 @@ import java.awt.Component;
 import java.io.File;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -47,6 +48,7 @@ import com.vividsolutions.jump.workbench.WorkbenchContext;
  * User interface to save a JUMP layer into a DXF file
  * Add an option to the standard panel
  * - option to create "_" suffixed layers for holes in polygon
+ * Several layers are saved in a single file by {@link SaveLayersAsDxfPlugIn}.
  * @author Michaël Michaud
  */
 // History
@@ -104,33 +106,59 @@ public class SaveDxfFileDataSourceQueryChooser extends SaveFileDataSourceQueryCh
     protected Map<String,Object> toProperties(File file) {
         Map<String,Object> properties = new HashMap<>(super.toProperties(file));
         Layer selectedLayer = context.getLayerableNamePanel().getSelectedLayers()[0];
-        String layerName = toAscii(selectedLayer.getName()).substring(0, Math.min(selectedLayer.getName().length(), 31));
-        properties.put("LAYER_NAME", layerName);
+        properties.put("LAYER_NAME", join(dxfLayerNames(selectedLayer)));
+        properties.put("SUFFIX", suffixCB.isSelected());
+        return properties;
+    }
+
+   /**
+    * Return the DXF layer name (31 ASCII chars max) of a JUMP layer.
+    */
+    static String dxfLayerName(Layer layer) {
+        String layerName = toAscii(layer.getName());
+        return layerName.substring(0, Math.min(layerName.length(), 31));
+    }
+
+   /**
+    * Return the DXF layer names used by the features of a JUMP layer.
+    * Features with a blank or missing LAYER value are written in the layer
+    * named after the JUMP layer, which comes first.
+    */
+    static Set<String> dxfLayerNames(Layer layer) {
+        Set<String> layerSet = new HashSet<>();
+        boolean useDefault = false;
         // If the layer schema has an attribute "LAYER" the value of this
         // attribute is used for the DXF layer name
-        if (selectedLayer instanceof Layer) {
-            FeatureSchema fs = selectedLayer.getFeatureCollectionWrapper().getFeatureSchema();
-            if (fs.hasAttribute("LAYER")) {
-                Set<String> layerSet = new HashSet<>();
-                List<Feature> features = selectedLayer.getFeatureCollectionWrapper().getFeatures();
-                for (Feature feature : features) {
-                    if (feature.getString("LAYER") != null &&
-                        feature.getString("LAYER").trim().length()>0 &&
-                        !feature.getString("LAYER").endsWith("_")) {
-                        layerSet.add(feature.getString("LAYER"));
-                    }
+        FeatureSchema fs = layer.getFeatureCollectionWrapper().getFeatureSchema();
+        if (fs.hasAttribute("LAYER")) {
+            List<Feature> features = layer.getFeatureCollectionWrapper().getFeatures();
+            for (Feature feature : features) {
+                if (feature.getString("LAYER") == null ||
+                    feature.getString("LAYER").trim().length() == 0) {
+                    useDefault = true;
                 }
-                String[] set = layerSet.toArray(new String[0]);
-                StringBuilder sb = new StringBuilder();
-                for (int i = 0 ; i < set.length ; i++) {
-                    if (i > 0) sb.append("\n");
-                    sb.append(set[i]);
+                else if (!feature.getString("LAYER").endsWith("_")) {
+                    layerSet.add(feature.getString("LAYER"));
                 }
-                properties.put("LAYER_NAME", sb.toString());
             }
         }
-        properties.put("SUFFIX", suffixCB.isSelected());
-        return properties;
+        else useDefault = true;
+        if (!useDefault) return layerSet;
+        Set<String> names = new LinkedHashSet<>();
+        names.add(dxfLayerName(layer));
+        names.addAll(layerSet);
+        return names;
+    }
+
+    static String join(Iterable<String> names) {
+        StringBuilder sb = new StringBuilder();
+        boolean first = true;
+        for (String name : names) {
+            if (!first) sb.append("\n");
+            sb.append(name);
+            first = false;
+        }
+        return sb.toString();
     }
 
     protected Component getSouthComponent1() {
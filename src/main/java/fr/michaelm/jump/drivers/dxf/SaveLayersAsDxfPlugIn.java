@@ -0,0 +1,113 @@
+/*
+ * Library name : dxf
+ * (C) 2021 Michaël Michaud
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ *
+ * For more information, contact:
+ *
+ * m.michael.michaud@orange.fr
+ *
+ */
+
+package fr.michaelm.jump.drivers.dxf;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import javax.swing.JCheckBox;
+import javax.swing.JFileChooser;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import com.vividsolutions.jump.feature.FeatureCollection;
+import com.vividsolutions.jump.io.DriverProperties;
+import com.vividsolutions.jump.task.TaskMonitor;
+import com.vividsolutions.jump.workbench.model.Layer;
+import com.vividsolutions.jump.workbench.plugin.EnableCheckFactory;
+import com.vividsolutions.jump.workbench.plugin.MultiEnableCheck;
+import com.vividsolutions.jump.workbench.plugin.PlugInContext;
+import com.vividsolutions.jump.workbench.plugin.ThreadedBasePlugIn;
+import com.vividsolutions.jump.workbench.ui.MenuNames;
+
+
+/**
+ * Save all the selected layers into a single DXF file.
+ * Each JUMP layer is written in its own DXF layer (unless its features have
+ * a LAYER attribute), and the LAYER table contains the names of all of them.
+ * Collections are passed to the writer directly, so that they are never
+ * stored in the properties of a data source.
+ * @author Michaël Michaud
+ */
+public class SaveLayersAsDxfPlugIn extends ThreadedBasePlugIn {
+
+    private Layer[] layers;
+    private File file;
+    private boolean suffix;
+
+    public String getName() {
+        return "Save selected layers as DXF";
+    }
+
+    public void initialize(PlugInContext context) throws Exception {
+        EnableCheckFactory checkFactory = EnableCheckFactory.getInstance(context.getWorkbenchContext());
+        context.getFeatureInstaller().addMainMenuPlugin(this,
+                new String[]{MenuNames.FILE}, getName() + "...", false, null,
+                new MultiEnableCheck()
+                    .add(checkFactory.createWindowWithLayerNamePanelMustBeActiveCheck())
+                    .add(checkFactory.createAtLeastNLayersMustBeSelectedCheck(1)));
+    }
+
+    public boolean execute(PlugInContext context) throws Exception {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle(getName());
+        chooser.setFileFilter(new FileNameExtensionFilter("DXF", "dxf"));
+        JCheckBox suffixCB = new JCheckBox("Put polygon holes in layers with a '_' suffix", true);
+        chooser.setAccessory(suffixCB);
+        if (chooser.showSaveDialog(context.getWorkbenchFrame()) != JFileChooser.APPROVE_OPTION) {
+            return false;
+        }
+        file = chooser.getSelectedFile();
+        if (!file.getName().toLowerCase().endsWith(".dxf")) {
+            file = new File(file.getPath() + ".dxf");
+        }
+        suffix = suffixCB.isSelected();
+        layers = context.getWorkbenchContext().getLayerableNamePanel().getSelectedLayers();
+        return true;
+    }
+
+    public void run(TaskMonitor monitor, PlugInContext context) throws Exception {
+        monitor.report(getName() + " : " + file.getName());
+        Set<String> layerNames = new LinkedHashSet<>();
+        List<FeatureCollection> collections = new ArrayList<>();
+        String[] defaultLayers = new String[layers.length];
+        for (int i = 0 ; i < layers.length ; i++) {
+            layerNames.addAll(SaveDxfFileDataSourceQueryChooser.dxfLayerNames(layers[i]));
+            collections.add(layers[i].getFeatureCollectionWrapper());
+            defaultLayers[i] = SaveDxfFileDataSourceQueryChooser.dxfLayerName(layers[i]);
+        }
+        DriverProperties dp = new DriverProperties(file.getPath());
+        dp.put("LAYER_NAME", SaveDxfFileDataSourceQueryChooser.join(layerNames));
+        dp.put("SUFFIX", suffix);
+        try {
+            new DxfWriter().write(collections, defaultLayers, dp);
+        } finally {
+            // do not keep the layers once they are written
+            layers = null;
+        }
+    }
+
+}